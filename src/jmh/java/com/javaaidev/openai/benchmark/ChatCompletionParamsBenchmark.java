@@ -0,0 +1,113 @@
+package com.javaaidev.openai.benchmark;
+
+import com.javaaidev.openai.OpenAIChatModel;
+import com.javaaidev.openai.OpenAiChatOptions;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.function.FunctionToolCallback;
+
+/**
+ * Builds request params for a conversation with a long history and many tools.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatCompletionParamsBenchmark {
+
+    private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+        + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.";
+
+    @Param({"10", "200"})
+    public int historySize;
+
+    @Param({"5", "50"})
+    public int toolCount;
+
+    private OpenAIChatModel chatModel;
+
+    private Prompt prompt;
+
+    public static class ToolInput {
+
+        private String input;
+
+        private Integer limit;
+
+        public String getInput() {
+            return input;
+        }
+
+        public void setInput(String input) {
+            this.input = input;
+        }
+
+        public Integer getLimit() {
+            return limit;
+        }
+
+        public void setLimit(Integer limit) {
+            this.limit = limit;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        chatModel = new OpenAIChatModel(OpenAIOkHttpClient.builder().apiKey("benchmark").build());
+        List<ToolCallback> toolCallbacks = new ArrayList<>();
+        for (int i = 0; i < toolCount; i++) {
+            toolCallbacks.add(
+                FunctionToolCallback.builder("tool" + i, (Function<ToolInput, ToolInput>) input -> input)
+                    .description("Synthetic tool " + i)
+                    .inputType(ToolInput.class)
+                    .build());
+        }
+        OpenAiChatOptions options = OpenAiChatOptions.builder()
+            .model("gpt-4o-mini")
+            .toolCallbacks(toolCallbacks)
+            .build();
+        List<Message> messages = new ArrayList<>();
+        messages.add(new SystemMessage("You are a helpful assistant."));
+        for (int i = 0; i < historySize; i++) {
+            String toolName = "tool" + (i % toolCount);
+            String toolCallId = "call_" + i;
+            messages.add(new UserMessage("Question " + i + ": " + TEXT));
+            messages.add(new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall(toolCallId, "function", toolName, "{\"input\":\"" + i + "\"}"))));
+            messages.add(new ToolResponseMessage(List.of(
+                new ToolResponseMessage.ToolResponse(toolCallId, toolName, "{\"input\":\"" + i + "\"}"))));
+            messages.add(new AssistantMessage("Answer " + i + ": " + TEXT));
+        }
+        prompt = new Prompt(messages, options);
+    }
+
+    @Benchmark
+    public ChatCompletionCreateParams buildParams() {
+        return chatModel.buildChatCompletionCreateParams(prompt, false);
+    }
+}
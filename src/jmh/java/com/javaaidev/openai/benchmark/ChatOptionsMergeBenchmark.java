@@ -0,0 +1,89 @@
+package com.javaaidev.openai.benchmark;
+
+import com.javaaidev.openai.OpenAiChatOptions;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+
+/**
+ * Merges runtime options over default options, with the Jackson-based {@link ModelOptionsUtils} and with
+ * the direct {@link OpenAiChatOptions#merge}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatOptionsMergeBenchmark {
+
+    private OpenAiChatOptions defaultOptions;
+
+    private OpenAiChatOptions openAiRuntimeOptions;
+
+    private ChatOptions genericRuntimeOptions;
+
+    @Setup
+    public void setUp() {
+        defaultOptions = OpenAiChatOptions.builder()
+            .model("gpt-4o-mini")
+            .temperature(0.7)
+            .maxCompletionTokens(1024)
+            .httpHeaders(Map.of("X-Team", "benchmark"))
+            .toolNames("search", "weather")
+            .build();
+        openAiRuntimeOptions = OpenAiChatOptions.builder()
+            .temperature(0.0)
+            .seed(42)
+            .user("user-1")
+            .toolNames("search")
+            .build();
+        genericRuntimeOptions = ToolCallingChatOptions.builder()
+            .temperature(0.0)
+            .toolNames("search")
+            .build();
+    }
+
+    @Benchmark
+    public OpenAiChatOptions reflectiveOpenAi() {
+        return reflective(openAiRuntimeOptions);
+    }
+
+    @Benchmark
+    public OpenAiChatOptions directOpenAi() {
+        return OpenAiChatOptions.merge(openAiRuntimeOptions, defaultOptions);
+    }
+
+    @Benchmark
+    public OpenAiChatOptions reflectiveGeneric() {
+        return reflective(genericRuntimeOptions);
+    }
+
+    @Benchmark
+    public OpenAiChatOptions directGeneric() {
+        return OpenAiChatOptions.merge(OpenAiChatOptions.fromChatOptions(genericRuntimeOptions), defaultOptions);
+    }
+
+    /**
+     * The previous merge of {@code OpenAIChatModel}, without the manual merge of non-JSON fields.
+     */
+    private OpenAiChatOptions reflective(ChatOptions runtimeOptions) {
+        OpenAiChatOptions options = runtimeOptions instanceof ToolCallingChatOptions
+            ? ModelOptionsUtils.copyToTarget((ToolCallingChatOptions) runtimeOptions, ToolCallingChatOptions.class,
+            OpenAiChatOptions.class)
+            : ModelOptionsUtils.copyToTarget(runtimeOptions, ChatOptions.class, OpenAiChatOptions.class);
+        return ModelOptionsUtils.merge(options, defaultOptions, OpenAiChatOptions.class);
+    }
+}
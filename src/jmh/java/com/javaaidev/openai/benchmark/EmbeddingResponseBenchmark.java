@@ -0,0 +1,130 @@
+package com.javaaidev.openai.benchmark;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.javaaidev.openai.OpenAIEmbeddingConverter;
+import com.openai.core.ObjectMappers;
+import com.openai.models.embeddings.CreateEmbeddingResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * Converts synthetic embedding responses to Spring AI {@link EmbeddingResponse}, comparing the boxed
+ * float path, the primitive float path and the base64 path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingResponseBenchmark {
+
+    @Param({"1536", "3072"})
+    public int dimensions;
+
+    @Param({"16"})
+    public int batchSize;
+
+    private JsonMapper mapper;
+
+    private String floatJson;
+
+    private String base64Json;
+
+    private CreateEmbeddingResponse response;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = ObjectMappers.jsonMapper();
+        Random random = new Random(42);
+        float[][] vectors = new float[batchSize][dimensions];
+        for (float[] vector : vectors) {
+            for (int j = 0; j < dimensions; j++) {
+                vector[j] = random.nextFloat() * 2 - 1;
+            }
+        }
+        floatJson = toJson(vectors, false);
+        base64Json = toJson(vectors, true);
+        response = mapper.readValue(floatJson, CreateEmbeddingResponse.class);
+    }
+
+    private String toJson(float[][] vectors, boolean base64) {
+        StringBuilder builder = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < vectors.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":");
+            if (base64) {
+                ByteBuffer buffer = ByteBuffer.allocate(vectors[i].length * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.asFloatBuffer().put(vectors[i]);
+                builder.append('"').append(Base64.getEncoder().encodeToString(buffer.array())).append('"');
+            } else {
+                builder.append('[');
+                for (int j = 0; j < vectors[i].length; j++) {
+                    if (j > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(vectors[i][j]);
+                }
+                builder.append(']');
+            }
+            builder.append('}');
+        }
+        builder.append("],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":")
+            .append(vectors.length * 8).append(",\"total_tokens\":").append(vectors.length * 8).append("}}");
+        return builder.toString();
+    }
+
+    @Benchmark
+    public EmbeddingResponse convert() {
+        return OpenAIEmbeddingConverter.INSTANCE.toEmbeddingResponse(response);
+    }
+
+    /**
+     * The previous conversion, boxing each value into an intermediate {@code List<Float>}.
+     */
+    @Benchmark
+    public List<Embedding> parseFloatBoxed() throws IOException {
+        CreateEmbeddingResponse parsed = mapper.readValue(floatJson, CreateEmbeddingResponse.class);
+        return parsed.data().stream().map(e -> {
+            List<Float> values = e.embedding().stream().map(Double::floatValue).toList();
+            float[] result = new float[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return new Embedding(result, (int) e.index());
+        }).toList();
+    }
+
+    @Benchmark
+    public EmbeddingResponse parseFloat() throws IOException {
+        return OpenAIEmbeddingConverter.INSTANCE.toEmbeddingResponse(
+            mapper.readValue(floatJson, CreateEmbeddingResponse.class));
+    }
+
+    @Benchmark
+    public EmbeddingResponse parseBase64() throws IOException {
+        return OpenAIEmbeddingConverter.INSTANCE.toEmbeddingResponse(
+            mapper.readValue(base64Json, CreateEmbeddingResponse.class));
+    }
+}
@@ -0,0 +1,114 @@
+package com.javaaidev.openai.benchmark;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.javaaidev.openai.OpenAiStreamChunkAccumulator;
+import com.javaaidev.openai.OpenAiStreamFunctionCallingHelper;
+import com.openai.core.ObjectMappers;
+import com.openai.models.chat.completions.ChatCompletionChunk;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merges the chunks of a streamed tool call with many argument fragments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamChunkMergeBenchmark {
+
+    private static final String CHUNK_PREFIX = "{\"id\":\"chatcmpl-bench\",\"object\":\"chat.completion.chunk\","
+        + "\"created\":1749632010,\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,";
+
+    @Param({"16", "256", "2048"})
+    public int fragments;
+
+    private final OpenAiStreamFunctionCallingHelper helper = new OpenAiStreamFunctionCallingHelper();
+
+    private List<ChatCompletionChunk> syntheticChunks;
+
+    private List<ChatCompletionChunk> recordedChunks;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonMapper mapper = ObjectMappers.jsonMapper();
+        List<String> lines = new ArrayList<>();
+        lines.add(CHUNK_PREFIX + "\"delta\":{\"role\":\"assistant\",\"tool_calls\":[{\"index\":0,"
+            + "\"id\":\"call_bench\",\"type\":\"function\",\"function\":{\"name\":\"search\","
+            + "\"arguments\":\"\"}}]},\"finish_reason\":null}]}");
+        for (int i = 0; i < fragments; i++) {
+            lines.add(CHUNK_PREFIX + "\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":"
+                + "{\"arguments\":\"\\\"fragment-" + i + "\\\",\"}}]},\"finish_reason\":null}]}");
+        }
+        lines.add(CHUNK_PREFIX + "\"delta\":{},\"finish_reason\":\"tool_calls\"}]}");
+        syntheticChunks = new ArrayList<>();
+        for (String line : lines) {
+            syntheticChunks.add(mapper.readValue(line, ChatCompletionChunk.class));
+        }
+
+        recordedChunks = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            getClass().getResourceAsStream("/chunks/parallel-tool-calls.jsonl"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    recordedChunks.add(mapper.readValue(line, ChatCompletionChunk.class));
+                }
+            }
+        }
+    }
+
+    private ChatCompletionChunk pairwiseMerge(List<ChatCompletionChunk> chunks) {
+        ChatCompletionChunk merged = null;
+        for (ChatCompletionChunk chunk : chunks) {
+            merged = helper.merge(merged, chunk);
+        }
+        return merged;
+    }
+
+    private ChatCompletionChunk accumulate(List<ChatCompletionChunk> chunks) {
+        OpenAiStreamChunkAccumulator accumulator = new OpenAiStreamChunkAccumulator();
+        for (ChatCompletionChunk chunk : chunks) {
+            accumulator.add(chunk);
+        }
+        return accumulator.build();
+    }
+
+    @Benchmark
+    public ChatCompletionChunk syntheticPairwiseMerge() {
+        return pairwiseMerge(syntheticChunks);
+    }
+
+    @Benchmark
+    public ChatCompletionChunk syntheticAccumulator() {
+        return accumulate(syntheticChunks);
+    }
+
+    @Benchmark
+    public ChatCompletionChunk recordedPairwiseMerge() {
+        return pairwiseMerge(recordedChunks);
+    }
+
+    @Benchmark
+    public ChatCompletionChunk recordedAccumulator() {
+        return accumulate(recordedChunks);
+    }
+}
@@ -0,0 +1,300 @@
+package com.javaaidev.openai
+
+import io.micrometer.core.instrument.FunctionCounter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.Meter
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Thrown when a [Bulkhead] rejects a call because its partition is at its limit and the queue is full, or
+ * the call waited longer than [Bulkhead.maxWait].
+ */
+class BulkheadFullException(val key: String, message: String) : IllegalStateException(message)
+
+/**
+ * Caps calls in flight per key, e.g. per model or per tenant, so one key can't take every connection.
+ *
+ * The limit of each key adapts with AIMD: it grows by one after a call completing within
+ * [latencyThreshold] while the key uses at least half of its limit, and shrinks by [backoffRatio] after
+ * a slower call or a call failing with a retryable error. Calls over the limit wait in FIFO order for at
+ * most [maxWait], up to [maxQueueDepth] of them. Other calls fail fast with [BulkheadFullException].
+ *
+ * Keys without calls for [idleTimeout] are evicted, and start again from [initialLimit]. With a
+ * [meterRegistry], the limit, calls in flight and queue depth of each key are registered as gauges tagged
+ * with [name] and the key, and rejected calls as a counter.
+ */
+class Bulkhead @JvmOverloads constructor(
+    val initialLimit: Int = DEFAULT_INITIAL_LIMIT,
+    val minLimit: Int = 1,
+    val maxLimit: Int = DEFAULT_MAX_LIMIT,
+    val maxQueueDepth: Int = 0,
+    val maxWait: Duration = Duration.ZERO,
+    val latencyThreshold: Duration = DEFAULT_LATENCY_THRESHOLD,
+    val backoffRatio: Double = DEFAULT_BACKOFF_RATIO,
+    val idleTimeout: Duration = DEFAULT_IDLE_TIMEOUT,
+    val name: String = DEFAULT_NAME,
+    private val meterRegistry: MeterRegistry? = null,
+    private val clock: Clock = Clock.systemUTC(),
+) {
+    init {
+        require(minLimit in 1..maxLimit) { "minLimit must be between 1 and maxLimit" }
+        require(initialLimit in minLimit..maxLimit) { "initialLimit must be between minLimit and maxLimit" }
+        require(maxQueueDepth >= 0) { "maxQueueDepth must not be negative" }
+        require(backoffRatio > 0 && backoffRatio < 1) { "backoffRatio must be between 0 and 1" }
+        require(!idleTimeout.isNegative) { "idleTimeout must not be negative" }
+    }
+
+    /**
+     * Current state of a key.
+     */
+    class Stats(val limit: Int, val inFlight: Int, val queueDepth: Int)
+
+    internal inner class Partition(val key: String) {
+        val lock = ReentrantLock(true)
+        val released = lock.newCondition()
+
+        @Volatile
+        var limit = initialLimit.toDouble()
+
+        @Volatile
+        var inFlight = 0
+
+        @Volatile
+        var queueDepth = 0
+        var idleSince = clock.millis()
+
+        /**
+         * Set when the partition is evicted. Callers holding it acquire from the new partition of the key.
+         */
+        var evicted = false
+        val meters: List<Meter> = meterRegistry?.let { registry ->
+            listOf(
+                gauge(registry, "openai.bulkhead.limit") { it.limit },
+                gauge(registry, "openai.bulkhead.in.flight") { it.inFlight.toDouble() },
+                gauge(registry, "openai.bulkhead.queue.depth") { it.queueDepth.toDouble() },
+            )
+        } ?: emptyList()
+
+        private fun gauge(registry: MeterRegistry, name: String, value: (Partition) -> Double): Gauge {
+            return Gauge.builder(name, this) { value(it) }
+                .tag("bulkhead", this@Bulkhead.name)
+                .tag("key", key)
+                .register(registry)
+        }
+
+        fun stats(): Stats {
+            lock.lock()
+            try {
+                return Stats(limit.toInt(), inFlight, queueDepth)
+            } finally {
+                lock.unlock()
+            }
+        }
+    }
+
+    /**
+     * A call in flight. Its latency is sampled once, on [sample] or [release].
+     */
+    inner class Permit internal constructor(private val partition: Partition) {
+        private val start = System.nanoTime()
+        private val sampled = AtomicBoolean(false)
+        private val released = AtomicBoolean(false)
+
+        /**
+         * Adapts the limit to the latency since the permit was acquired. A [failed] call with a
+         * retryable error backs off.
+         */
+        fun sample(failed: Boolean = false) {
+            if (!sampled.compareAndSet(false, true)) {
+                return
+            }
+            val latency = System.nanoTime() - start
+            partition.lock.lock()
+            try {
+                partition.limit = if (failed || latency > latencyThreshold.toNanos()) {
+                    max(minLimit.toDouble(), partition.limit * backoffRatio)
+                } else if (partition.inFlight * 2 >= partition.limit) {
+                    min(maxLimit.toDouble(), partition.limit + 1)
+                } else {
+                    partition.limit
+                }
+                partition.released.signalAll()
+            } finally {
+                partition.lock.unlock()
+            }
+        }
+
+        fun release(failed: Boolean = false) {
+            sample(failed)
+            releaseSlot()
+        }
+
+        /**
+         * Releases the permit of a call that was not sent, without sampling its latency.
+         */
+        fun abandon() {
+            sampled.set(true)
+            releaseSlot()
+        }
+
+        private fun releaseSlot() {
+            if (!released.compareAndSet(false, true)) {
+                return
+            }
+            partition.lock.lock()
+            try {
+                partition.inFlight--
+                if (partition.inFlight == 0) {
+                    partition.idleSince = clock.millis()
+                }
+                partition.released.signal()
+            } finally {
+                partition.lock.unlock()
+            }
+        }
+    }
+
+    private val partitions = ConcurrentHashMap<String, Partition>()
+    private val rejected = AtomicLong()
+    private val nextEviction = AtomicLong(clock.millis() + idleTimeout.toMillis())
+
+    init {
+        meterRegistry?.let { registry ->
+            FunctionCounter.builder("openai.bulkhead.rejected", rejected) { it.get().toDouble() }
+                .tag("bulkhead", name)
+                .register(registry)
+        }
+    }
+
+    /**
+     * Number of rejected calls.
+     */
+    val rejectedCount: Long
+        get() = rejected.get()
+
+    /**
+     * Acquires a permit for [key], waiting for at most [maxWait].
+     *
+     * @throws BulkheadFullException when the key is at its limit
+     */
+    fun acquire(key: String): Permit {
+        evictIdle()
+        while (true) {
+            val partition = partitions.computeIfAbsent(key) { Partition(it) }
+            partition.lock.lockInterruptibly()
+            try {
+                if (partition.evicted) {
+                    continue
+                }
+                return acquire(key, partition)
+            } finally {
+                partition.lock.unlock()
+            }
+        }
+    }
+
+    /**
+     * Called with the partition lock held.
+     */
+    private fun acquire(key: String, partition: Partition): Permit {
+        if (partition.inFlight < partition.limit.toInt() && partition.queueDepth == 0) {
+            partition.inFlight++
+            return Permit(partition)
+        }
+        if (partition.queueDepth >= maxQueueDepth || maxWait.isZero) {
+            throw reject(key, partition)
+        }
+        partition.queueDepth++
+        try {
+            var remaining = maxWait.toNanos()
+            while (partition.inFlight >= partition.limit.toInt()) {
+                if (remaining <= 0) {
+                    throw reject(key, partition)
+                }
+                remaining = partition.released.awaitNanos(remaining)
+            }
+            partition.inFlight++
+            return Permit(partition)
+        } finally {
+            partition.queueDepth--
+        }
+    }
+
+    /**
+     * Evicts keys without calls for [idleTimeout], at most once per [idleTimeout].
+     */
+    private fun evictIdle() {
+        val now = clock.millis()
+        val next = nextEviction.get()
+        if (now < next || !nextEviction.compareAndSet(next, now + idleTimeout.toMillis())) {
+            return
+        }
+        partitions.values.forEach { partition ->
+            if (!partition.lock.tryLock()) {
+                return@forEach
+            }
+            try {
+                if (partition.inFlight == 0 && partition.queueDepth == 0 &&
+                    now - partition.idleSince >= idleTimeout.toMillis()
+                ) {
+                    partition.evicted = true
+                    partition.meters.forEach { meterRegistry?.remove(it) }
+                    partitions.remove(partition.key, partition)
+                }
+            } finally {
+                partition.lock.unlock()
+            }
+        }
+    }
+
+    fun <T> execute(key: String, call: () -> T): T {
+        val permit = acquire(key)
+        var failed = false
+        try {
+            return call()
+        } catch (e: RuntimeException) {
+            failed = OpenAiRetryPolicy.isRetryable(e)
+            throw e
+        } finally {
+            permit.release(failed)
+        }
+    }
+
+    fun stats(key: String): Stats? = partitions[key]?.stats()
+
+    /**
+     * Current state of all keys, to be exported as metrics.
+     */
+    fun stats(): Map<String, Stats> = partitions.mapValues { it.value.stats() }
+
+    private fun reject(key: String, partition: Partition): BulkheadFullException {
+        rejected.incrementAndGet()
+        return BulkheadFullException(
+            key,
+            "Bulkhead of $key is full: ${partition.inFlight} calls in flight with limit ${partition.limit.toInt()}, " +
+                    "${partition.queueDepth} queued"
+        )
+    }
+
+    companion object {
+        const val DEFAULT_INITIAL_LIMIT = 20
+        const val DEFAULT_MAX_LIMIT = 200
+        const val DEFAULT_BACKOFF_RATIO = 0.9
+        val DEFAULT_LATENCY_THRESHOLD: Duration = Duration.ofSeconds(30)
+        val DEFAULT_IDLE_TIMEOUT: Duration = Duration.ofMinutes(10)
+        const val DEFAULT_NAME = "bulkhead"
+
+        /**
+         * Metadata key of the tenant when [OpenAiChatOptions.getUser] is not set.
+         */
+        const val TENANT_METADATA_KEY = "tenant"
+    }
+}
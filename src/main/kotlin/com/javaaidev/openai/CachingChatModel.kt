@@ -0,0 +1,121 @@
+package com.javaaidev.openai
+
+import org.springframework.ai.chat.messages.AssistantMessage
+import org.springframework.ai.chat.model.ChatModel
+import org.springframework.ai.chat.model.ChatResponse
+import org.springframework.ai.chat.model.Generation
+import org.springframework.ai.chat.model.MessageAggregator
+import org.springframework.ai.chat.prompt.ChatOptions
+import org.springframework.ai.chat.prompt.Prompt
+import reactor.core.publisher.Flux
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Caches responses of an [OpenAIChatModel], keyed by a hash of the request params.
+ *
+ * Only deterministic requests are cached, i.e. with temperature 0 or a seed. Responses with tool calls are
+ * never cached, and neither are responses of requests with tools executed internally, because tools may
+ * have side effects. Cached responses are replayed by [stream] as a sequence of chunks.
+ *
+ * [MessageAggregator] keeps only the text of the first generation, so streamed responses are not cached
+ * when a chunk has tool calls or more than one generation.
+ */
+class CachingChatModel(
+    private val chatModel: OpenAIChatModel,
+    private val cache: ChatResponseCache,
+) : ChatModel {
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    val hitCount: Long
+        get() = hits.get()
+
+    val missCount: Long
+        get() = misses.get()
+
+    override fun call(prompt: Prompt): ChatResponse {
+        val key = cacheKey(prompt) ?: return chatModel.call(prompt)
+        cache.get(key)?.let {
+            hits.incrementAndGet()
+            return it
+        }
+        misses.incrementAndGet()
+        return chatModel.call(prompt).also {
+            if (isCacheable(it)) {
+                cache.put(key, it)
+            }
+        }
+    }
+
+    override fun stream(prompt: Prompt): Flux<ChatResponse> {
+        return Flux.defer {
+            val key = cacheKey(prompt) ?: return@defer chatModel.stream(prompt)
+            val cached = cache.get(key)
+            if (cached != null) {
+                hits.incrementAndGet()
+                replay(cached)
+            } else {
+                misses.incrementAndGet()
+                val cacheable = AtomicBoolean(true)
+                val responses = chatModel.stream(prompt).doOnNext { response ->
+                    if (response.results.size > 1 || response.results.any { it.output.hasToolCalls() }) {
+                        cacheable.set(false)
+                    }
+                }
+                MessageAggregator().aggregate(responses) {
+                    if (cacheable.get() && isCacheable(it)) {
+                        cache.put(key, it)
+                    }
+                }
+            }
+        }
+    }
+
+    override fun getDefaultOptions(): ChatOptions = chatModel.defaultOptions
+
+    /**
+     * Returns `null` when the request is not deterministic or may execute tools.
+     */
+    private fun cacheKey(prompt: Prompt): String? {
+        val requestPrompt = chatModel.buildRequestPrompt(prompt)
+        val options = requestPrompt.options as OpenAiChatOptions
+        if (options.temperature != 0.0 && options.seed == null) {
+            return null
+        }
+        val params = chatModel.buildChatCompletionCreateParams(requestPrompt)
+        if (params.tools().map { it.isNotEmpty() }.orElse(false) && options.internalToolExecutionEnabled != false) {
+            return null
+        }
+        return RequestKeys.of(params)
+    }
+
+    private fun isCacheable(response: ChatResponse): Boolean {
+        return response.results.isNotEmpty() && response.results.none { it.output.hasToolCalls() }
+    }
+
+    private fun replay(response: ChatResponse): Flux<ChatResponse> {
+        val texts = response.results.map { it.output.text ?: "" }
+        val chunkCount = texts.maxOf { (it.length + REPLAY_CHUNK_SIZE - 1) / REPLAY_CHUNK_SIZE }.coerceAtLeast(1)
+        return Flux.range(0, chunkCount).map { index ->
+            val last = index == chunkCount - 1
+            val generations = response.results.mapIndexed { i, generation ->
+                val text = texts[i]
+                val piece = text.substring(
+                    (index * REPLAY_CHUNK_SIZE).coerceAtMost(text.length),
+                    ((index + 1) * REPLAY_CHUNK_SIZE).coerceAtMost(text.length)
+                )
+                if (last) Generation(AssistantMessage(piece), generation.metadata) else Generation(AssistantMessage(piece))
+            }
+            val builder = ChatResponse.builder().generations(generations)
+            if (last) {
+                builder.metadata(response.metadata)
+            }
+            builder.build()
+        }
+    }
+
+    companion object {
+        private const val REPLAY_CHUNK_SIZE = 32
+    }
+}
@@ -0,0 +1,48 @@
+package com.javaaidev.openai
+
+import com.openai.models.chat.completions.ChatCompletionTool
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Caches built [ChatCompletionTool]s by name, description, strict flag, JSON schema and whether the schema
+ * is canonicalized, so an unchanged tool set costs one map lookup per tool instead of parsing and
+ * converting its schema on every request.
+ *
+ * The cache is cleared when it reaches [maxSize], which only happens when tools are generated dynamically.
+ */
+class ChatCompletionToolCache(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+    private data class Key(
+        val name: String,
+        val description: String?,
+        val schema: Any,
+        val strict: Boolean?,
+        val canonical: Boolean
+    )
+
+    private val tools = ConcurrentHashMap<Key, ChatCompletionTool>()
+
+    /**
+     * @param schema JSON schema of the tool parameters, either as a JSON string or a map
+     */
+    fun get(
+        name: String,
+        description: String?,
+        schema: Any,
+        strict: Boolean?,
+        canonical: Boolean,
+        builder: () -> ChatCompletionTool
+    ): ChatCompletionTool {
+        val key = Key(name, description, schema, strict, canonical)
+        tools[key]?.let { return it }
+        if (tools.size >= maxSize) {
+            tools.clear()
+        }
+        return tools.computeIfAbsent(key) { builder() }
+    }
+
+    fun size(): Int = tools.size
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 1024
+    }
+}
@@ -0,0 +1,13 @@
+package com.javaaidev.openai
+
+import org.springframework.ai.chat.model.ChatResponse
+
+/**
+ * Storage of [ChatResponse]s for [CachingChatModel], keyed by request.
+ */
+interface ChatResponseCache {
+
+    fun get(key: String): ChatResponse?
+
+    fun put(key: String, response: ChatResponse)
+}
@@ -0,0 +1,30 @@
+package com.javaaidev.openai
+
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+
+/**
+ * Storage for embeddings, keyed by [key].
+ */
+interface EmbeddingCache {
+
+    fun get(key: String): FloatArray?
+
+    fun put(key: String, embedding: FloatArray)
+
+    companion object {
+        /**
+         * Content-addressed key of an embedding: SHA-256 of model, dimensions and text, in hex.
+         */
+        @JvmStatic
+        fun key(model: String?, dimensions: Int?, text: String): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            digest.update((model ?: "").toByteArray(StandardCharsets.UTF_8))
+            digest.update(0)
+            digest.update((dimensions?.toString() ?: "").toByteArray(StandardCharsets.UTF_8))
+            digest.update(0)
+            digest.update(text.toByteArray(StandardCharsets.UTF_8))
+            return digest.digest().joinToString("") { "%02x".format(it) }
+        }
+    }
+}
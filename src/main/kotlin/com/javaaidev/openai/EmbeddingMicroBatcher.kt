@@ -0,0 +1,109 @@
+package com.javaaidev.openai
+
+import reactor.core.Disposable
+import reactor.core.scheduler.Scheduler
+import reactor.core.scheduler.Schedulers
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Micro-batching of single-text embed calls, see [EmbeddingMicroBatcher].
+ *
+ * @param maxBatchSize Max number of texts in a batch
+ * @param maxDelay Max time a text waits for other texts before its batch is sent
+ */
+class MicroBatchingConfig @JvmOverloads constructor(
+    val maxBatchSize: Int = 64,
+    val maxDelay: Duration = Duration.ofMillis(5),
+) {
+    init {
+        require(maxBatchSize > 0) { "maxBatchSize must be positive" }
+        require(!maxDelay.isNegative) { "maxDelay must not be negative" }
+    }
+}
+
+/**
+ * Collects concurrent single-text embed calls and sends them as one request, when [MicroBatchingConfig.maxBatchSize]
+ * texts are collected or the first text has waited [MicroBatchingConfig.maxDelay]. Each caller gets the embedding
+ * of its own text, or the failure of the batch.
+ */
+internal class EmbeddingMicroBatcher(
+    private val config: MicroBatchingConfig,
+    private val scheduler: Scheduler = Schedulers.boundedElastic(),
+    private val call: (List<String>) -> List<FloatArray>,
+) {
+    private class Pending(val text: String, val future: CompletableFuture<FloatArray>)
+
+    private val lock = Any()
+    private var pending = ArrayList<Pending>()
+    private var scheduledFlush: Disposable? = null
+    private val batches = AtomicLong()
+    private val texts = AtomicLong()
+
+    /**
+     * Number of batches sent.
+     */
+    val batchCount: Long
+        get() = batches.get()
+
+    /**
+     * Number of texts sent in batches.
+     */
+    val textCount: Long
+        get() = texts.get()
+
+    fun embed(text: String): FloatArray {
+        try {
+            return submit(text).join()
+        } catch (e: CompletionException) {
+            throw e.cause as? RuntimeException ?: e.cause as? Error ?: IllegalStateException(e.cause)
+        }
+    }
+
+    fun submit(text: String): CompletableFuture<FloatArray> {
+        val future = CompletableFuture<FloatArray>()
+        var batch: List<Pending>? = null
+        synchronized(lock) {
+            pending.add(Pending(text, future))
+            if (pending.size >= config.maxBatchSize) {
+                scheduledFlush?.dispose()
+                batch = takePending()
+            } else if (pending.size == 1) {
+                scheduledFlush = scheduler.schedule({ flush() }, config.maxDelay.toNanos(), TimeUnit.NANOSECONDS)
+            }
+        }
+        batch?.let { full -> scheduler.schedule { send(full) } }
+        return future
+    }
+
+    private fun flush() {
+        val batch = synchronized(lock) { takePending() }
+        if (batch.isNotEmpty()) {
+            send(batch)
+        }
+    }
+
+    private fun takePending(): List<Pending> {
+        val batch = pending
+        pending = ArrayList()
+        scheduledFlush = null
+        return batch
+    }
+
+    private fun send(batch: List<Pending>) {
+        batches.incrementAndGet()
+        texts.addAndGet(batch.size.toLong())
+        try {
+            val embeddings = call(batch.map { it.text })
+            if (embeddings.size != batch.size) {
+                throw IllegalStateException("Expected ${batch.size} embeddings, got ${embeddings.size}")
+            }
+            batch.forEachIndexed { index, item -> item.future.complete(embeddings[index]) }
+        } catch (e: Throwable) {
+            batch.forEach { it.future.completeExceptionally(e) }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.javaaidev.openai
+
+import reactor.core.publisher.Flux
+import reactor.core.publisher.SignalType
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * How [EndpointRouter] selects an endpoint.
+ */
+enum class RoutingStrategy {
+    /**
+     * Endpoint with the fewest requests in flight.
+     */
+    LEAST_OUTSTANDING_REQUESTS,
+
+    /**
+     * Endpoint with the lowest exponentially weighted moving average latency, weighted by requests in flight.
+     */
+    LATENCY_EWMA,
+}
+
+enum class CircuitState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN,
+}
+
+/**
+ * Routes calls across several endpoints, e.g. models of different deployments or regions.
+ *
+ * Each endpoint has a circuit breaker, which opens after [failureThreshold] consecutive failures. An open
+ * endpoint receives no calls for [openDuration], then a single trial call decides whether it's closed or
+ * opened again. Calls failing with a retryable error, see [OpenAiRetryPolicy.isRetryable], fail over to
+ * the next endpoint. Streams only fail over before the first element.
+ */
+class EndpointRouter<T> @JvmOverloads constructor(
+    endpoints: List<T>,
+    private val strategy: RoutingStrategy = RoutingStrategy.LEAST_OUTSTANDING_REQUESTS,
+    private val failureThreshold: Int = DEFAULT_FAILURE_THRESHOLD,
+    private val openDuration: Duration = DEFAULT_OPEN_DURATION,
+    private val clock: Clock = Clock.systemUTC(),
+) {
+    init {
+        require(endpoints.isNotEmpty()) { "At least one endpoint is required" }
+        require(failureThreshold > 0) { "failureThreshold must be positive" }
+    }
+
+    private inner class Endpoint(val index: Int, val target: T) {
+        val outstanding = AtomicInteger()
+        var latencyEwma = 0.0
+        var consecutiveFailures = 0
+        var state = CircuitState.CLOSED
+        var openedAt = 0L
+        var trialInFlight = false
+
+        /**
+         * Called with the router lock held.
+         */
+        fun isAvailable(now: Long): Boolean {
+            return when (state) {
+                CircuitState.CLOSED -> true
+                CircuitState.OPEN -> now - openedAt >= openDuration.toMillis()
+                CircuitState.HALF_OPEN -> !trialInFlight
+            }
+        }
+
+        fun score(): Double {
+            return when (strategy) {
+                RoutingStrategy.LEAST_OUTSTANDING_REQUESTS -> outstanding.get().toDouble()
+                RoutingStrategy.LATENCY_EWMA -> latencyEwma * (outstanding.get() + 1)
+            }
+        }
+    }
+
+    private val endpoints = endpoints.mapIndexed { index, target -> Endpoint(index, target) }
+    private val lock = Any()
+    private val next = AtomicInteger()
+
+    val size: Int
+        get() = endpoints.size
+
+    fun endpoint(index: Int): T = endpoints[index].target
+
+    fun outstanding(index: Int): Int = endpoints[index].outstanding.get()
+
+    fun circuitState(index: Int): CircuitState = synchronized(lock) { endpoints[index].state }
+
+    fun <R> execute(call: (T) -> R): R = execute({ true }, call)
+
+    /**
+     * Fails over only while [canFailOver] returns `true`, e.g. before a call has side effects.
+     */
+    fun <R> execute(canFailOver: () -> Boolean, call: (T) -> R): R {
+        val tried = mutableSetOf<Int>()
+        var lastError: RuntimeException? = null
+        while (true) {
+            val endpoint = select(tried) ?: throw lastError ?: noEndpointAvailable()
+            tried.add(endpoint.index)
+            val start = System.nanoTime()
+            try {
+                return call(endpoint.target).also { onSuccess(endpoint, System.nanoTime() - start) }
+            } catch (e: Throwable) {
+                if (e !is RuntimeException) {
+                    onAbort(endpoint)
+                    throw e
+                }
+                val retryable = OpenAiRetryPolicy.isRetryable(e)
+                onFailure(endpoint, retryable)
+                if (!retryable || !canFailOver()) {
+                    throw e
+                }
+                lastError = e
+            } finally {
+                endpoint.outstanding.decrementAndGet()
+            }
+        }
+    }
+
+    /**
+     * Latency of streams is the time to the first element.
+     */
+    fun <R : Any> stream(call: (T) -> Flux<R>): Flux<R> = stream({ true }, call)
+
+    fun <R : Any> stream(canFailOver: () -> Boolean, call: (T) -> Flux<R>): Flux<R> {
+        return Flux.defer { stream(canFailOver, call, mutableSetOf(), null) }
+    }
+
+    private fun <R : Any> stream(
+        canFailOver: () -> Boolean,
+        call: (T) -> Flux<R>,
+        tried: MutableSet<Int>,
+        lastError: Throwable?
+    ): Flux<R> {
+        val endpoint = select(tried) ?: return Flux.error(lastError ?: noEndpointAvailable())
+        tried.add(endpoint.index)
+        val start = System.nanoTime()
+        val emitted = AtomicBoolean(false)
+        return Flux.defer { call(endpoint.target) }
+            .doOnNext {
+                if (emitted.compareAndSet(false, true)) {
+                    onSuccess(endpoint, System.nanoTime() - start)
+                }
+            }
+            .doOnComplete {
+                if (!emitted.get()) {
+                    onSuccess(endpoint, System.nanoTime() - start)
+                }
+            }
+            .doFinally { signal ->
+                endpoint.outstanding.decrementAndGet()
+                if (signal == SignalType.CANCEL && !emitted.get()) {
+                    onAbort(endpoint)
+                }
+            }
+            .onErrorResume { e ->
+                val retryable = OpenAiRetryPolicy.isRetryable(e)
+                onFailure(endpoint, retryable)
+                if (!emitted.get() && retryable && canFailOver()) {
+                    stream(canFailOver, call, tried, e)
+                } else {
+                    Flux.error(e)
+                }
+            }
+    }
+
+    /**
+     * Selects an available endpoint not tried yet, and counts the call as outstanding.
+     */
+    private fun select(tried: Set<Int>): Endpoint? {
+        synchronized(lock) {
+            val now = clock.millis()
+            val candidates = endpoints.filter { it.index !in tried && it.isAvailable(now) }
+            if (candidates.isEmpty()) {
+                return null
+            }
+            val minScore = candidates.minOf { it.score() }
+            val best = candidates.filter { it.score() == minScore }
+            val endpoint = best[Math.floorMod(next.getAndIncrement(), best.size)]
+            if (endpoint.state != CircuitState.CLOSED) {
+                endpoint.state = CircuitState.HALF_OPEN
+                endpoint.trialInFlight = true
+            }
+            endpoint.outstanding.incrementAndGet()
+            return endpoint
+        }
+    }
+
+    private fun onSuccess(endpoint: Endpoint, latencyNanos: Long) {
+        synchronized(lock) {
+            endpoint.latencyEwma = if (endpoint.latencyEwma == 0.0) {
+                latencyNanos.toDouble()
+            } else {
+                EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * endpoint.latencyEwma
+            }
+            endpoint.consecutiveFailures = 0
+            endpoint.state = CircuitState.CLOSED
+            endpoint.trialInFlight = false
+        }
+    }
+
+    /**
+     * Only retryable errors count against the endpoint, other errors are caused by the request.
+     */
+    private fun onFailure(endpoint: Endpoint, retryable: Boolean) {
+        synchronized(lock) {
+            if (endpoint.state == CircuitState.HALF_OPEN) {
+                endpoint.trialInFlight = false
+                if (!retryable) {
+                    endpoint.state = CircuitState.CLOSED
+                    return
+                }
+                endpoint.state = CircuitState.OPEN
+                endpoint.openedAt = clock.millis()
+                return
+            }
+            if (!retryable) {
+                return
+            }
+            endpoint.consecutiveFailures++
+            if (endpoint.consecutiveFailures >= failureThreshold) {
+                endpoint.state = CircuitState.OPEN
+                endpoint.openedAt = clock.millis()
+            }
+        }
+    }
+
+    /**
+     * A trial call cancelled before its first element, or ending with an error or checked exception not
+     * caused by the endpoint, doesn't decide the circuit state.
+     */
+    private fun onAbort(endpoint: Endpoint) {
+        synchronized(lock) {
+            if (endpoint.state == CircuitState.HALF_OPEN) {
+                endpoint.trialInFlight = false
+            }
+        }
+    }
+
+    private fun noEndpointAvailable(): IllegalStateException {
+        return IllegalStateException("No endpoint available, circuit breakers of all endpoints are open")
+    }
+
+    companion object {
+        const val DEFAULT_FAILURE_THRESHOLD = 5
+        val DEFAULT_OPEN_DURATION: Duration = Duration.ofSeconds(30)
+        private const val EWMA_ALPHA = 0.3
+    }
+}
@@ -0,0 +1,52 @@
+package com.javaaidev.openai
+
+import org.springframework.ai.chat.model.ChatResponse
+import java.time.Clock
+import java.time.Duration
+
+/**
+ * [ChatResponseCache] keeping at most [maxEntries] responses in memory for [ttl], evicting the least
+ * recently used.
+ */
+class InMemoryChatResponseCache @JvmOverloads constructor(
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+    private val ttl: Duration = DEFAULT_TTL,
+    private val clock: Clock = Clock.systemUTC(),
+) : ChatResponseCache {
+    init {
+        require(maxEntries > 0) { "maxEntries must be positive" }
+    }
+
+    private class Entry(val response: ChatResponse, val expiresAt: Long)
+
+    private val entries = object : LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?): Boolean {
+            return size > maxEntries
+        }
+    }
+
+    @Synchronized
+    override fun get(key: String): ChatResponse? {
+        val entry = entries[key] ?: return null
+        if (entry.expiresAt <= clock.millis()) {
+            entries.remove(key)
+            return null
+        }
+        return entry.response
+    }
+
+    @Synchronized
+    override fun put(key: String, response: ChatResponse) {
+        entries[key] = Entry(response, clock.millis() + ttl.toMillis())
+    }
+
+    @Synchronized
+    fun size(): Int = entries.size
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 1000
+
+        @JvmField
+        val DEFAULT_TTL: Duration = Duration.ofHours(1)
+    }
+}
@@ -0,0 +1,33 @@
+package com.javaaidev.openai
+
+/**
+ * [EmbeddingCache] keeping at most [maxEntries] embeddings in memory, evicting the least recently used.
+ *
+ * Embeddings are copied on [put] and [get], so callers modifying them don't change cached values.
+ */
+class InMemoryEmbeddingCache(private val maxEntries: Int = DEFAULT_MAX_ENTRIES) : EmbeddingCache {
+    init {
+        require(maxEntries > 0) { "maxEntries must be positive" }
+    }
+
+    private val entries = object : LinkedHashMap<String, FloatArray>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, FloatArray>?): Boolean {
+            return size > maxEntries
+        }
+    }
+
+    @Synchronized
+    override fun get(key: String): FloatArray? = entries[key]?.copyOf()
+
+    @Synchronized
+    override fun put(key: String, embedding: FloatArray) {
+        entries[key] = embedding.copyOf()
+    }
+
+    @Synchronized
+    fun size(): Int = entries.size
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 10_000
+    }
+}
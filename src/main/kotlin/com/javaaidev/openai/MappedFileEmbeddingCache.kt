@@ -0,0 +1,120 @@
+package com.javaaidev.openai
+
+import java.io.Closeable
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * [EmbeddingCache] backed by a memory-mapped file of at most [maxBytes].
+ *
+ * Records are appended to the file and an index of record offsets is rebuilt when the file is opened.
+ * Once the file is full, new embeddings are no longer stored. Reopening a file with a smaller [maxBytes]
+ * keeps only the records that fit.
+ */
+class MappedFileEmbeddingCache(
+    path: Path,
+    private val maxBytes: Long = DEFAULT_MAX_BYTES
+) : EmbeddingCache, Closeable {
+    private val channel: FileChannel
+    private val buffer: MappedByteBuffer
+    private val offsets = HashMap<String, Int>()
+
+    init {
+        require(maxBytes > HEADER_SIZE && maxBytes <= Int.MAX_VALUE) {
+            "maxBytes must be greater than $HEADER_SIZE and at most ${Int.MAX_VALUE}"
+        }
+        channel = FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes)
+        buffer.order(ByteOrder.LITTLE_ENDIAN)
+        if (buffer.getInt(0) == MAGIC) {
+            loadIndex()
+        } else {
+            buffer.putInt(0, MAGIC)
+            buffer.putInt(4, HEADER_SIZE)
+        }
+    }
+
+    @Synchronized
+    override fun get(key: String): FloatArray? {
+        val offset = offsets[key] ?: return null
+        val keyLength = buffer.getInt(offset)
+        val dataOffset = offset + 4 + keyLength
+        val embedding = FloatArray(buffer.getInt(dataOffset))
+        for (i in embedding.indices) {
+            embedding[i] = buffer.getFloat(dataOffset + 4 + i * 4)
+        }
+        return embedding
+    }
+
+    @Synchronized
+    override fun put(key: String, embedding: FloatArray) {
+        if (offsets.containsKey(key)) {
+            return
+        }
+        val keyBytes = key.toByteArray(StandardCharsets.UTF_8)
+        val position = buffer.getInt(4)
+        val recordSize = 4L + keyBytes.size + 4L + embedding.size * 4L
+        if (position + recordSize > maxBytes) {
+            return
+        }
+        buffer.putInt(position, keyBytes.size)
+        buffer.put(position + 4, keyBytes)
+        val dataOffset = position + 4 + keyBytes.size
+        buffer.putInt(dataOffset, embedding.size)
+        for (i in embedding.indices) {
+            buffer.putFloat(dataOffset + 4 + i * 4, embedding[i])
+        }
+        buffer.putInt(4, (position + recordSize).toInt())
+        offsets[key] = position
+    }
+
+    @Synchronized
+    fun size(): Int = offsets.size
+
+    @Synchronized
+    override fun close() {
+        buffer.force()
+        channel.close()
+    }
+
+    /**
+     * Rebuilds the index from the records within the mapped size, which is smaller than the stored end when
+     * the file is reopened with a smaller [maxBytes]. Records past it are dropped.
+     */
+    private fun loadIndex() {
+        val end = buffer.getInt(4).toLong().coerceIn(HEADER_SIZE.toLong(), maxBytes)
+        var position = HEADER_SIZE.toLong()
+        while (position + 4 <= end) {
+            val keyLength = buffer.getInt(position.toInt())
+            if (keyLength < 0 || position + 4 + keyLength + 4 > end) {
+                break
+            }
+            val dataOffset = (position + 4 + keyLength).toInt()
+            val dimensions = buffer.getInt(dataOffset)
+            val recordEnd = dataOffset + 4L + dimensions * 4L
+            if (dimensions < 0 || recordEnd > end) {
+                break
+            }
+            val keyBytes = ByteArray(keyLength)
+            buffer.get(position.toInt() + 4, keyBytes)
+            offsets[String(keyBytes, StandardCharsets.UTF_8)] = position.toInt()
+            position = recordEnd
+        }
+        buffer.putInt(4, position.toInt())
+    }
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 256L * 1024 * 1024
+        private const val MAGIC = 0x4f41454d
+        private const val HEADER_SIZE = 8
+    }
+}
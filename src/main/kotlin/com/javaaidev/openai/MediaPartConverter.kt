@@ -0,0 +1,11 @@
+package com.javaaidev.openai
+
+import com.openai.models.chat.completions.ChatCompletionContentPart
+import org.springframework.ai.content.Media
+
+/**
+ * Converts [Media] of a user message to a content part.
+ */
+fun interface MediaPartConverter {
+    fun convert(media: Media, encoder: OpenAiMediaEncoder): ChatCompletionContentPart
+}
@@ -0,0 +1,135 @@
+package com.javaaidev.openai
+
+import com.openai.models.chat.completions.ChatCompletionContentPart
+import com.openai.models.chat.completions.ChatCompletionContentPartImage
+import com.openai.models.chat.completions.ChatCompletionContentPartInputAudio
+import org.springframework.util.MimeType
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Dispatch table from MIME types to [MediaPartConverter]s.
+ *
+ * Converters are looked up by type and subtype, ignoring parameters, then by `type/*`. Images are sent as
+ * `image_url`, MP3 and WAV audio as `input_audio`, and other media, e.g. PDFs and documents, as a `file`.
+ */
+class MediaPartConverters {
+    private val converters = ConcurrentHashMap<MimeType, MediaPartConverter>()
+
+    init {
+        listOf(AUDIO_MP3, AUDIO_MPEG, AUDIO_MPEG3, AUDIO_X_MP3).forEach { register(it, MP3) }
+        listOf(AUDIO_WAV, AUDIO_WAVE, AUDIO_X_WAV, AUDIO_VND_WAVE).forEach { register(it, WAV) }
+        listOf(APPLICATION_PDF, APPLICATION_ALL, TEXT_ALL).forEach { register(it, FILE) }
+        register(IMAGE_ALL, IMAGE_URL)
+    }
+
+    /**
+     * Registers a converter for [mimeType], replacing any existing one. Use `type/*` to match all subtypes.
+     */
+    fun register(mimeType: MimeType, converter: MediaPartConverter) {
+        converters[normalize(mimeType)] = converter
+    }
+
+    fun converterFor(mimeType: MimeType): MediaPartConverter {
+        return converters[normalize(mimeType)]
+            ?: converters[MimeType(mimeType.type, MimeType.WILDCARD_TYPE)]
+            ?: FILE
+    }
+
+    private fun normalize(mimeType: MimeType): MimeType {
+        return if (mimeType.parameters.isEmpty()) mimeType else MimeType(mimeType.type, mimeType.subtype)
+    }
+
+    companion object {
+        @JvmField
+        val AUDIO_MP3 = MimeType("audio", "mp3")
+
+        @JvmField
+        val AUDIO_MPEG = MimeType("audio", "mpeg")
+
+        @JvmField
+        val AUDIO_MPEG3 = MimeType("audio", "mpeg3")
+
+        @JvmField
+        val AUDIO_X_MP3 = MimeType("audio", "x-mp3")
+
+        @JvmField
+        val AUDIO_WAV = MimeType("audio", "wav")
+
+        @JvmField
+        val AUDIO_WAVE = MimeType("audio", "wave")
+
+        @JvmField
+        val AUDIO_X_WAV = MimeType("audio", "x-wav")
+
+        @JvmField
+        val AUDIO_VND_WAVE = MimeType("audio", "vnd.wave")
+
+        @JvmField
+        val APPLICATION_PDF = MimeType("application", "pdf")
+
+        @JvmField
+        val APPLICATION_ALL = MimeType("application", MimeType.WILDCARD_TYPE)
+
+        @JvmField
+        val TEXT_ALL = MimeType("text", MimeType.WILDCARD_TYPE)
+
+        @JvmField
+        val IMAGE_ALL = MimeType("image", MimeType.WILDCARD_TYPE)
+
+        @JvmField
+        val IMAGE_URL = MediaPartConverter { media, encoder ->
+            ChatCompletionContentPart.ofImageUrl(
+                ChatCompletionContentPartImage.builder()
+                    .imageUrl(
+                        ChatCompletionContentPartImage.ImageUrl.builder()
+                            .url(encoder.toDataUrl(media))
+                            .build()
+                    )
+                    .build()
+            )
+        }
+
+        @JvmField
+        val MP3 = inputAudio(ChatCompletionContentPartInputAudio.InputAudio.Format.MP3)
+
+        @JvmField
+        val WAV = inputAudio(ChatCompletionContentPartInputAudio.InputAudio.Format.WAV)
+
+        /**
+         * Sends the media inline as a `file` part, with the media name as file name. `file_data` doesn't
+         * take URLs, so `String` data is rejected.
+         */
+        @JvmField
+        val FILE = MediaPartConverter { media, encoder ->
+            require(media.data !is String) {
+                "Media of type ${media.mimeType} is sent as a file part, which doesn't support URLs"
+            }
+            ChatCompletionContentPart.ofFile(
+                ChatCompletionContentPart.File.builder()
+                    .file(
+                        ChatCompletionContentPart.File.FileObject.builder()
+                            .fileData(encoder.toDataUrl(media))
+                            .filename(media.name)
+                            .build()
+                    )
+                    .build()
+            )
+        }
+
+        @JvmStatic
+        fun inputAudio(format: ChatCompletionContentPartInputAudio.InputAudio.Format): MediaPartConverter {
+            return MediaPartConverter { media, encoder ->
+                ChatCompletionContentPart.ofInputAudio(
+                    ChatCompletionContentPartInputAudio.builder()
+                        .inputAudio(
+                            ChatCompletionContentPartInputAudio.InputAudio.builder()
+                                .data(encoder.toBase64(media))
+                                .format(format)
+                                .build()
+                        )
+                        .build()
+                )
+            }
+        }
+    }
+}
@@ -1,195 +1,554 @@
 package com.javaaidev.openai
 
 import com.openai.client.OpenAIClient
+import com.openai.client.OpenAIClientAsync
+import com.openai.core.http.AsyncStreamResponse
+import com.openai.core.http.Headers
 import com.openai.core.JsonObject
 import com.openai.core.JsonValue
+import com.openai.core.RequestOptions
+import com.openai.errors.RateLimitException
 import com.openai.models.FunctionDefinition
 import com.openai.models.FunctionParameters
+import com.openai.models.Metadata
+import com.openai.models.ReasoningEffort
+import com.openai.models.ResponseFormatJsonObject
+import com.openai.models.ResponseFormatJsonSchema
+import com.openai.models.ResponseFormatText
 import com.openai.models.chat.completions.*
+import com.openai.models.completions.CompletionUsage
+import io.micrometer.observation.Observation
+import io.micrometer.observation.ObservationRegistry
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor
 import org.springframework.ai.chat.messages.AssistantMessage
 import org.springframework.ai.chat.messages.SystemMessage
 import org.springframework.ai.chat.messages.ToolResponseMessage
 import org.springframework.ai.chat.messages.UserMessage
 import org.springframework.ai.chat.metadata.ChatGenerationMetadata
+import org.springframework.ai.chat.metadata.ChatResponseMetadata
+import org.springframework.ai.chat.metadata.RateLimit
 import org.springframework.ai.chat.model.ChatModel
 import org.springframework.ai.chat.model.ChatResponse
 import org.springframework.ai.chat.model.Generation
-import org.springframework.ai.chat.prompt.ChatOptions
+import org.springframework.ai.chat.model.MessageAggregator
+import org.springframework.ai.chat.observation.ChatModelObservationContext
+import org.springframework.ai.chat.observation.ChatModelObservationConvention
+import org.springframework.ai.chat.observation.ChatModelObservationDocumentation
+import org.springframework.ai.chat.observation.DefaultChatModelObservationConvention
 import org.springframework.ai.chat.prompt.Prompt
 import org.springframework.ai.model.ModelOptionsUtils
 import org.springframework.ai.model.tool.DefaultToolExecutionEligibilityPredicate
 import org.springframework.ai.model.tool.ToolCallingChatOptions
 import org.springframework.ai.model.tool.ToolCallingManager
 import org.springframework.ai.model.tool.ToolExecutionResult
+import org.springframework.ai.observation.conventions.AiProvider
+import org.springframework.ai.openai.api.ResponseFormat
 import org.springframework.util.MimeType
-import org.springframework.util.MimeTypeUtils
 import reactor.core.publisher.Flux
+import reactor.core.publisher.FluxSink
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Scheduler
 import reactor.core.scheduler.Schedulers
+import java.time.Duration
 import java.util.*
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeoutException
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicReference
+import java.util.function.Supplier
 
-class OpenAIChatModel(
+class OpenAIChatModel @JvmOverloads constructor(
     private val openAIClient: OpenAIClient,
     manager: ToolCallingManager? = null,
     options: OpenAiChatOptions? = null,
+    toolExecutor: Executor? = null,
+    private val observationRegistry: ObservationRegistry = ObservationRegistry.NOOP,
+    private val openAIClientAsync: OpenAIClientAsync? = null,
+    streamScheduler: Scheduler? = null,
+    private val toolScheduler: Scheduler = Schedulers.boundedElastic(),
+    private val singleFlight: SingleFlight? = null,
+    private val rateLimiter: OpenAiRateLimiter? = null,
+    private val retryPolicy: OpenAiRetryPolicy? = null,
+    private val bulkhead: Bulkhead? = null,
+    private val tenantBulkhead: Bulkhead? = null,
 ) : ChatModel {
     private val defaultOptions = options ?: OpenAiChatOptions.builder().build()
-    private val toolCallingManager = manager ?: ToolCallingManager.builder().build()
+    private val toolCallingManager =
+        manager ?: ToolCallingManager.builder().observationRegistry(observationRegistry).build()
     private val toolExecutionEligibilityPredicate = DefaultToolExecutionEligibilityPredicate()
     private val chunkMerger = OpenAiStreamFunctionCallingHelper()
-
-    override fun call(prompt: Prompt): ChatResponse {
-        val requestPrompt = buildRequestPrompt(prompt)
-        return internalCall(requestPrompt, null)
+    private val parallelToolCallExecutor by lazy { ParallelToolCallExecutor(toolCallingManager, toolExecutor) }
+    private var observationConvention: ChatModelObservationConvention? = null
+    private val toolCache = ChatCompletionToolCache()
+    private val mediaEncoder = OpenAiMediaEncoder()
+    private val mediaPartConverters = MediaPartConverters()
+    private val blockingStreamScheduler by lazy {
+        streamScheduler ?: Schedulers.newBoundedElastic(
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+            "openai-stream",
+            60,
+            true
+        )
     }
 
-    private fun internalCall(prompt: Prompt, previousChatResponse: ChatResponse?): ChatResponse {
-        val completion = openAIClient.chat().completions().create(buildChatCompletionCreateParams(prompt))
-        val generations = completion.choices().map { choice ->
-            buildGeneration(
-                choice, mapOf(
-                    "id" to completion.id(),
-                    "index" to choice.index(),
-                    "finishReason" to choice.finishReason().value().name
-                )
-            )
-        }
-        val response = ChatResponse.builder().generations(generations).build()
-        if (toolExecutionEligibilityPredicate.isToolExecutionRequired(prompt.options, response)) {
-            val toolExecutionResult = toolCallingManager.executeToolCalls(prompt, response)
+    override fun call(prompt: Prompt): ChatResponse {
+        val toolLoop = ToolLoop(buildRequestPrompt(prompt))
+        while (true) {
+            val response = toolLoop.addUsage(internalCall(toolLoop.prompt))
+            if (!toolExecutionEligibilityPredicate.isToolExecutionRequired(toolLoop.prompt.options, response)) {
+                return response
+            }
+            val toolExecutionResult = toolLoop.executeToolCalls(response)
             if (toolExecutionResult.returnDirect()) {
                 return ChatResponse.builder()
                     .from(response)
                     .generations(ToolExecutionResult.buildGenerations(toolExecutionResult))
                     .build()
-            } else {
-                return this.internalCall(
-                    Prompt(toolExecutionResult.conversationHistory(), prompt.options),
-                    response
-                )
             }
+            toolLoop.next(toolExecutionResult)
         }
-        return response
     }
 
-    override fun stream(prompt: Prompt): Flux<ChatResponse> {
-        val requestPrompt = buildRequestPrompt(prompt)
-        return internalStream(requestPrompt, null)
+    private fun internalCall(prompt: Prompt): ChatResponse {
+        val observationContext = ChatModelObservationContext.builder()
+            .prompt(prompt)
+            .provider(AiProvider.OPENAI.value())
+            .build()
+        return ChatModelObservationDocumentation.CHAT_MODEL_OPERATION
+            .observation(
+                observationConvention,
+                DEFAULT_OBSERVATION_CONVENTION,
+                { observationContext },
+                observationRegistry
+            )
+            .observe(Supplier {
+                val (completion, rateLimit) = withPermits(prompt) { createCompletion(prompt) }
+                val generations = completion.choices().map { choice ->
+                    buildGeneration(
+                        choice, mapOf(
+                            "id" to completion.id(),
+                            "index" to choice.index(),
+                            "finishReason" to choice.finishReason().value().name
+                        )
+                    )
+                }
+                ChatResponse.builder()
+                    .generations(generations)
+                    .metadata(
+                        OpenAiResponseMetadataSupport.buildResponseMetadata(
+                            completion.id(),
+                            completion.model(),
+                            completion.usage().orElse(null),
+                            rateLimit
+                        )
+                    )
+                    .build()
+                    .also { observationContext.response = it }
+            })!!
+    }
+
+    /**
+     * Identical deterministic requests in flight at the same time share one HTTP call when a [SingleFlight]
+     * is configured. Completions stored by OpenAI are not hedged.
+     */
+    private fun createCompletion(prompt: Prompt): Pair<ChatCompletion, RateLimit?> {
+        val params = buildChatCompletionCreateParams(prompt)
+        val options = prompt.options as? OpenAiChatOptions
+        val create = Supplier {
+            withRetry(options?.store != true) { requestOptions -> sendCompletion(prompt, params, requestOptions) }
+        }
+        val deterministic = options != null && (options.temperature == 0.0 || options.seed != null)
+        return if (singleFlight != null && deterministic) {
+            singleFlight.execute(RequestKeys.of(params), create)
+        } else {
+            create.get()
+        }
     }
 
-    private fun internalStream(prompt: Prompt, previousChatResponse: ChatResponse?): Flux<ChatResponse> {
-        val isInsideTool = AtomicBoolean(false)
-        return Flux.fromStream(openAIClient.chat().completions().createStreaming(buildChatCompletionCreateParams(prompt)).stream())
-            .map { chunk ->
-                if (chunkMerger.isStreamingToolFunctionCall(chunk)) {
-                    isInsideTool.set(true)
+    private fun sendCompletion(
+        prompt: Prompt,
+        params: ChatCompletionCreateParams,
+        requestOptions: RequestOptions
+    ): Pair<ChatCompletion, RateLimit?> {
+        val estimatedTokens = acquireRateLimit(prompt)
+        val rawResponse = rateLimited(estimatedTokens) {
+            openAIClient.withRawResponse().chat().completions().create(params, requestOptions)
+        }
+        val completion = rawResponse.parse()
+        val rateLimit = OpenAiResponseMetadataSupport.rateLimit(rawResponse.headers())
+        rateLimiter?.onResponse(
+            estimatedTokens,
+            completion.usage().map { it.totalTokens() }.orElse(null),
+            rateLimit
+        )
+        return completion to rateLimit
+    }
+
+    private fun <T> withRetry(hedge: Boolean, call: (RequestOptions) -> T): T {
+        return if (retryPolicy != null) retryPolicy.execute(hedge) { call(it) } else call(RequestOptions.none())
+    }
+
+    /**
+     * Each tool round re-subscribes to the same pipeline with the next prompt, instead of nesting
+     * another [Flux] per round.
+     */
+    override fun stream(prompt: Prompt): Flux<ChatResponse> {
+        return Flux.defer {
+            val toolLoop = ToolLoop(buildRequestPrompt(prompt))
+            val responses = Flux.defer {
+                toolLoop.continueLoop = false
+                val roundPrompt = toolLoop.prompt
+                internalStream(roundPrompt).concatMap { response ->
+                    if (toolExecutionEligibilityPredicate.isToolExecutionRequired(roundPrompt.options, response)) {
+                        Mono.defer {
+                            val toolExecutionResult = toolLoop.executeToolCalls(response)
+                            if (toolExecutionResult.returnDirect()) {
+                                Mono.just(
+                                    ChatResponse.builder()
+                                        .from(response)
+                                        .generations(ToolExecutionResult.buildGenerations(toolExecutionResult))
+                                        .build()
+                                )
+                            } else {
+                                toolLoop.next(toolExecutionResult)
+                                toolLoop.continueLoop = true
+                                Mono.empty()
+                            }
+                        }.subscribeOn(toolScheduler)
+                    } else {
+                        Mono.just(toolLoop.addUsage(response))
+                    }
                 }
-                chunk
-            }
-            .windowUntil { chunk ->
-                if (isInsideTool.get() && chunkMerger.isStreamingToolFunctionCallFinish(chunk)) {
-                    isInsideTool.set(false)
-                    true
-                } else {
-                    !isInsideTool.get()
+            }.repeat { toolLoop.continueLoop }
+            toolLoop.deadline?.let { deadline ->
+                responses.timeout(Mono.delay(toolLoop.remaining(deadline))) {
+                    Mono.delay(toolLoop.remaining(deadline))
+                }.onErrorMap(TimeoutException::class.java) {
+                    IllegalStateException("Tool loop did not finish within ${toolLoop.timeout}", it)
                 }
+            } ?: responses
+        }
+    }
+
+    private fun internalStream(prompt: Prompt): Flux<ChatResponse> {
+        return Flux.deferContextual { contextView ->
+            val observationContext = ChatModelObservationContext.builder()
+                .prompt(prompt)
+                .provider(AiProvider.OPENAI.value())
+                .build()
+            val observation = ChatModelObservationDocumentation.CHAT_MODEL_OPERATION.observation(
+                observationConvention,
+                DEFAULT_OBSERVATION_CONVENTION,
+                { observationContext },
+                observationRegistry
+            )
+            observation.parentObservation(contextView.getOrDefault<Observation>(ObservationThreadLocalAccessor.KEY, null))
+                .start()
+            val streamObserver = OpenAiObservationSupport.StreamObserver(
+                observationRegistry,
+                observation,
+                prompt.options?.model
+            )
+
+            val isInsideTool = AtomicBoolean(false)
+            val rateLimit = AtomicReference<RateLimit?>()
+            val estimatedTokens = rateLimiter?.let { estimateTokens(prompt) } ?: 0L
+            val chunks = streamChunks(buildChatCompletionCreateParams(prompt, true)) {
+                rateLimit.set(OpenAiResponseMetadataSupport.rateLimit(it))
+                rateLimiter?.onResponse(estimatedTokens, null, rateLimit.get())
             }
-            .concatMapIterable { window ->
-                val monoChunk = window.reduce(
-                    ChatCompletionChunk.builder().id("").choices(listOf()).created(0).model("").build()
-                ) { previous, current ->
-                    chunkMerger.merge(previous, current)
+            val limitedChunks = rateLimiter?.let { limiter ->
+                Mono.fromRunnable<Void> { limiter.acquire(estimatedTokens) }
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .thenMany(rateLimitedChunks(estimatedTokens, chunks))
+                    .doOnNext { chunk ->
+                        chunk.usage().ifPresent { limiter.onResponse(estimatedTokens, it.totalTokens(), null) }
+                    }
+            } ?: chunks
+            val responses = withPermits(prompt, retryPolicy?.retryStream(limitedChunks) ?: limitedChunks)
+                .doOnNext { streamObserver.onChunk() }
+                .doOnError { streamObserver.onError(it) }
+                .doFinally { streamObserver.onTerminate() }
+                .map { chunk ->
+                    if (chunkMerger.isStreamingToolFunctionCall(chunk)) {
+                        isInsideTool.set(true)
+                    }
+                    chunk
                 }
-                listOf(monoChunk)
-            }
-            .flatMap { it }
-            .map { chunk ->
-                val generations = chunk.choices().map { choice ->
-                    buildGeneration(
-                        choice, mapOf(
-                            "id" to chunk.id(),
-                            "index" to choice.index(),
-                            "finishReason" to choice.finishReason().map { reason -> reason.value().name }.orElse("")
+                .windowUntil { chunk ->
+                    if (isInsideTool.get() && chunkMerger.isStreamingToolFunctionCallFinish(chunk)) {
+                        isInsideTool.set(false)
+                        true
+                    } else {
+                        !isInsideTool.get()
+                    }
+                }
+                .concatMap { window ->
+                    window.reduceWith({ OpenAiStreamChunkAccumulator() }) { accumulator, current ->
+                        accumulator.add(current)
+                    }.filter { !it.isEmpty() }.map { it.build() }
+                }
+                .map { chunk ->
+                    val generations = chunk.choices().map { choice ->
+                        buildGeneration(
+                            choice, mapOf(
+                                "id" to chunk.id(),
+                                "index" to choice.index(),
+                                "finishReason" to choice.finishReason().map { reason -> reason.value().name }
+                                    .orElse("")
+                            )
                         )
-                    )
-                }.toList()
-                ChatResponse.builder().generations(generations).build()
-            }.flatMap { response ->
-                if (toolExecutionEligibilityPredicate.isToolExecutionRequired(prompt.options, response)) {
-                    Flux.defer {
-                        val toolExecutionResult = toolCallingManager.executeToolCalls(prompt, response)
-                        if (toolExecutionResult.returnDirect()) {
-                            Flux.just(
-                                ChatResponse.builder()
-                                    .from(response)
-                                    .generations(ToolExecutionResult.buildGenerations(toolExecutionResult))
-                                    .build()
+                    }.toList().ifEmpty {
+                        listOf(Generation(AssistantMessage("")))
+                    }
+                    ChatResponse.builder()
+                        .generations(generations)
+                        .metadata(
+                            OpenAiResponseMetadataSupport.buildResponseMetadata(
+                                chunk.id(),
+                                chunk.model(),
+                                chunk.usage().orElse(null),
+                                rateLimit.get()
                             )
+                        )
+                        .build()
+                }
+                .doOnError { observation.error(it) }
+                .doFinally { observation.stop() }
+                .contextWrite { it.put(ObservationThreadLocalAccessor.KEY, observation) }
+            MessageAggregator().aggregate(responses) { observationContext.response = it }
+        }
+    }
+
+    /**
+     * Acquires permits of the tenant, from [OpenAiChatOptions.getUser] or the
+     * [Bulkhead.TENANT_METADATA_KEY] metadata, and of the model.
+     *
+     * @throws BulkheadFullException when a bulkhead is full
+     */
+    private fun acquirePermits(prompt: Prompt): List<Bulkhead.Permit> {
+        val options = prompt.options as? OpenAiChatOptions
+        val permits = mutableListOf<Bulkhead.Permit>()
+        try {
+            val tenant = options?.user ?: options?.metadata?.get(Bulkhead.TENANT_METADATA_KEY)
+            if (tenantBulkhead != null && tenant != null) {
+                permits.add(tenantBulkhead.acquire(tenant))
+            }
+            bulkhead?.let { permits.add(it.acquire(options?.model ?: DEFAULT_BULKHEAD_KEY)) }
+        } catch (e: RuntimeException) {
+            permits.forEach { it.abandon() }
+            throw e
+        }
+        return permits
+    }
+
+    private fun <T> withPermits(prompt: Prompt, call: () -> T): T {
+        if (bulkhead == null && tenantBulkhead == null) {
+            return call()
+        }
+        val permits = acquirePermits(prompt)
+        var failed = false
+        try {
+            return call()
+        } catch (e: RuntimeException) {
+            failed = OpenAiRetryPolicy.isRetryable(e)
+            throw e
+        } finally {
+            permits.forEach { it.release(failed) }
+        }
+    }
+
+    /**
+     * Latency of streams is sampled on the first chunk, and permits are released when the stream terminates.
+     */
+    private fun <T : Any> withPermits(prompt: Prompt, chunks: Flux<T>): Flux<T> {
+        if (bulkhead == null && tenantBulkhead == null) {
+            return chunks
+        }
+        return Flux.using(
+            { acquirePermits(prompt) },
+            { permits ->
+                chunks.doOnNext { permits.forEach { it.sample() } }
+                    .doOnError { e -> permits.forEach { it.sample(OpenAiRetryPolicy.isRetryable(e)) } }
+            },
+            { permits -> permits.forEach { it.release() } }
+        ).subscribeOn(Schedulers.boundedElastic())
+    }
+
+    private fun estimateTokens(prompt: Prompt): Long {
+        val options = prompt.options as? OpenAiChatOptions
+        return rateLimiter?.estimateTokens(
+            prompt.instructions.map { it.text },
+            options?.maxCompletionTokens ?: options?.maxTokens
+        ) ?: 0L
+    }
+
+    /**
+     * Returns the estimated tokens acquired from the [OpenAiRateLimiter], or 0 without one.
+     */
+    private fun acquireRateLimit(prompt: Prompt): Long {
+        val limiter = rateLimiter ?: return 0L
+        return estimateTokens(prompt).also { limiter.acquire(it) }
+    }
+
+    /**
+     * Corrects the [OpenAiRateLimiter] from headers of rate-limited responses.
+     */
+    private fun <T> rateLimited(estimatedTokens: Long, call: () -> T): T {
+        try {
+            return call()
+        } catch (e: RateLimitException) {
+            rateLimiter?.onResponse(estimatedTokens, 0, OpenAiResponseMetadataSupport.rateLimit(e.headers()))
+            throw e
+        }
+    }
+
+    private fun <T : Any> rateLimitedChunks(estimatedTokens: Long, chunks: Flux<T>): Flux<T> {
+        return chunks.doOnError(RateLimitException::class.java) { e ->
+            rateLimiter?.onResponse(estimatedTokens, 0, OpenAiResponseMetadataSupport.rateLimit(e.headers()))
+        }
+    }
+
+    /**
+     * Streams chunks with the async client when available. Otherwise, the blocking stream is consumed
+     * on a dedicated scheduler, so the subscribing thread is never blocked. In both cases, the stream
+     * is closed on complete, error and cancel, which releases the HTTP connection.
+     */
+    private fun streamChunks(
+        params: ChatCompletionCreateParams,
+        onHeaders: (Headers) -> Unit
+    ): Flux<ChatCompletionChunk> {
+        if (openAIClientAsync != null) {
+            return streamChunksAsync(openAIClientAsync, params, onHeaders)
+        }
+        return Flux.using(
+            {
+                val rawResponse = openAIClient.withRawResponse().chat().completions().createStreaming(params)
+                try {
+                    onHeaders(rawResponse.headers())
+                    rawResponse.parse()
+                } catch (e: RuntimeException) {
+                    rawResponse.close()
+                    throw e
+                }
+            },
+            { Flux.fromStream(it.stream()) },
+            { it.close() }
+        ).subscribeOn(blockingStreamScheduler)
+    }
+
+    /**
+     * Chunks pushed by [AsyncStreamResponse] are buffered until requested. The HTTP connection is
+     * closed when the subscriber cancels, or when [onHeaders] or parsing the response fails.
+     */
+    private fun streamChunksAsync(
+        client: OpenAIClientAsync,
+        params: ChatCompletionCreateParams,
+        onHeaders: (Headers) -> Unit
+    ): Flux<ChatCompletionChunk> {
+        return Flux.create({ sink ->
+            val streamResponse = AtomicReference<AsyncStreamResponse<ChatCompletionChunk>?>()
+            val future = client.withRawResponse().chat().completions().createStreaming(params)
+            sink.onDispose {
+                future.cancel(false)
+                streamResponse.get()?.close()
+            }
+            future.whenComplete { rawResponse, error ->
+                if (error != null) {
+                    sink.error(if (error is CompletionException && error.cause != null) error.cause!! else error)
+                    return@whenComplete
+                }
+                val stream = try {
+                    onHeaders(rawResponse.headers())
+                    rawResponse.parse()
+                } catch (e: Exception) {
+                    rawResponse.close()
+                    sink.error(e)
+                    return@whenComplete
+                }
+                streamResponse.set(stream)
+                if (sink.isCancelled) {
+                    stream.close()
+                    return@whenComplete
+                }
+                stream.subscribe(object : AsyncStreamResponse.Handler<ChatCompletionChunk> {
+                    override fun onNext(value: ChatCompletionChunk) {
+                        sink.next(value)
+                    }
+
+                    override fun onComplete(error: Optional<Throwable>) {
+                        if (error.isPresent) {
+                            sink.error(error.get())
                         } else {
-                            this.internalStream(
-                                Prompt(toolExecutionResult.conversationHistory(), prompt.options),
-                                response
-                            )
+                            sink.complete()
                         }
-                    }.subscribeOn(Schedulers.boundedElastic())
-                } else {
-                    Flux.just(response)
-                }
+                    }
+                })
             }
+        }, FluxSink.OverflowStrategy.BUFFER)
     }
 
-    private fun buildRequestPrompt(prompt: Prompt): Prompt {
-        var runtimeOptions: OpenAiChatOptions? = null
-        if (prompt.options != null) {
-            runtimeOptions = if (prompt.options is ToolCallingChatOptions) {
-                ModelOptionsUtils.copyToTarget(
-                    prompt.options as ToolCallingChatOptions,
-                    ToolCallingChatOptions::class.java,
-                    OpenAiChatOptions::class.java
-                )
+    /**
+     * Sends media of [mimeType] with [converter] instead of the default one.
+     */
+    fun registerMediaPartConverter(mimeType: MimeType, converter: MediaPartConverter) {
+        mediaPartConverters.register(mimeType, converter)
+    }
+
+    /**
+     * Use a custom [ChatModelObservationConvention] instead of the default one.
+     */
+    fun setObservationConvention(observationConvention: ChatModelObservationConvention) {
+        this.observationConvention = observationConvention
+    }
+
+    private fun executeToolCalls(
+        prompt: Prompt,
+        response: ChatResponse,
+        toolRound: Int,
+        timeout: Duration?
+    ): ToolExecutionResult {
+        val options = prompt.options as? OpenAiChatOptions
+        val toolCallCount = response.results.sumOf { it.output.toolCalls.size }
+        return OpenAiObservationSupport.observeToolRound(
+            observationRegistry,
+            prompt.options?.model,
+            toolRound,
+            toolCallCount
+        ) {
+            if (options != null && options.parallelToolExecution == true) {
+                parallelToolCallExecutor.executeToolCalls(prompt, response, timeout)
             } else {
-                ModelOptionsUtils.copyToTarget(
-                    prompt.options, ChatOptions::class.java,
-                    OpenAiChatOptions::class.java
-                )
+                toolCallingManager.executeToolCalls(prompt, response)
             }
         }
+    }
 
-        val requestOptions = ModelOptionsUtils.merge(
-            runtimeOptions, this.defaultOptions,
-            OpenAiChatOptions::class.java
-        )
-
-        if (runtimeOptions != null) {
-            requestOptions.httpHeaders = mergeHttpHeaders(runtimeOptions.httpHeaders, this.defaultOptions.httpHeaders)
-            requestOptions.internalToolExecutionEnabled = ModelOptionsUtils.mergeOption<Boolean>(
-                runtimeOptions.internalToolExecutionEnabled,
-                this.defaultOptions.internalToolExecutionEnabled
-            )
-            requestOptions.toolNames = ToolCallingChatOptions.mergeToolNames(
-                runtimeOptions.toolNames,
-                this.defaultOptions.toolNames
-            )
-            requestOptions.toolCallbacks = ToolCallingChatOptions.mergeToolCallbacks(
-                runtimeOptions.toolCallbacks,
-                this.defaultOptions.toolCallbacks
-            )
-            requestOptions.toolContext = ToolCallingChatOptions.mergeToolContext(
-                runtimeOptions.toolContext,
-                this.defaultOptions.toolContext
-            )
-        } else {
-            requestOptions.httpHeaders = this.defaultOptions.httpHeaders
-            requestOptions.internalToolExecutionEnabled = this.defaultOptions.internalToolExecutionEnabled
-            requestOptions.toolNames = this.defaultOptions.toolNames
-            requestOptions.toolCallbacks = this.defaultOptions.toolCallbacks
-            requestOptions.toolContext = this.defaultOptions.toolContext
-        }
-        return prompt.mutate().chatOptions(requestOptions).build()
+    /**
+     * Merges runtime options of [prompt] over the default options. Prompts without runtime options use a
+     * copy of the default options, so the request can't modify them.
+     */
+    internal fun buildRequestPrompt(prompt: Prompt): Prompt {
+        val runtimeOptions = prompt.options ?: return Prompt(prompt.instructions, defaultOptions.copy())
+        val requestOptions = OpenAiChatOptions.merge(OpenAiChatOptions.fromChatOptions(runtimeOptions), defaultOptions)
+        return Prompt(prompt.instructions, requestOptions)
     }
 
-    private fun buildChatCompletionCreateParams(prompt: Prompt): ChatCompletionCreateParams {
+    /**
+     * Builds the [ChatCompletionCreateParams] sent to the OpenAI API for a prompt with merged options.
+     *
+     * Not part of the API. [JvmName] keeps the name callable from the Java JMH benchmarks, which are
+     * compiled with the tests.
+     */
+    @JvmName("buildChatCompletionCreateParams")
+    internal fun buildChatCompletionCreateParams(
+        prompt: Prompt,
+        streaming: Boolean = false
+    ): ChatCompletionCreateParams {
         val paramsBuilder = ChatCompletionCreateParams.builder()
+        val canonical = (prompt.options as? OpenAiChatOptions)?.canonicalPrompt == true
 
         prompt.instructions.forEach { message ->
             when (message) {
@@ -201,39 +560,7 @@ class OpenAIChatModel(
                         )
                     )
                     message.media.map { media ->
-                        when (media.mimeType) {
-                            MimeTypeUtils.parseMimeType("audio/mp3") -> ChatCompletionContentPart.ofInputAudio(
-                                ChatCompletionContentPartInputAudio.builder()
-                                    .inputAudio(
-                                        ChatCompletionContentPartInputAudio.InputAudio.builder()
-                                            .data(fromAudioData(media.data))
-                                            .format(ChatCompletionContentPartInputAudio.InputAudio.Format.MP3)
-                                            .build()
-                                    )
-                                    .build()
-                            )
-
-                            MimeTypeUtils.parseMimeType("audio/wav") -> ChatCompletionContentPart.ofInputAudio(
-                                ChatCompletionContentPartInputAudio.builder()
-                                    .inputAudio(
-                                        ChatCompletionContentPartInputAudio.InputAudio.builder()
-                                            .data(fromAudioData(media.data))
-                                            .format(ChatCompletionContentPartInputAudio.InputAudio.Format.WAV)
-                                            .build()
-                                    )
-                                    .build()
-                            )
-
-                            else -> ChatCompletionContentPart.ofImageUrl(
-                                ChatCompletionContentPartImage.builder()
-                                    .imageUrl(
-                                        ChatCompletionContentPartImage.ImageUrl.builder()
-                                            .url(fromMediaData(media.mimeType, media.data))
-                                            .build()
-                                    )
-                                    .build()
-                            )
-                        }
+                        mediaPartConverters.converterFor(media.mimeType).convert(media, mediaEncoder)
                     }.let {
                         contentParts.addAll(it)
                     }
@@ -244,7 +571,9 @@ class OpenAIChatModel(
                     )
                 }
 
-                is SystemMessage -> paramsBuilder.addSystemMessage(message.text)
+                is SystemMessage -> paramsBuilder.addSystemMessage(
+                    if (canonical) PromptCanonicalizer.normalizeText(message.text) else message.text
+                )
                 is AssistantMessage -> {
                     val messageParamBuilder = ChatCompletionAssistantMessageParam.builder()
                     val contentParts = mutableListOf(
@@ -289,36 +618,234 @@ class OpenAIChatModel(
         prompt.options?.temperature?.let {
             paramsBuilder.temperature(it)
         }
+        (prompt.options as? OpenAiChatOptions)?.let {
+            applyOpenAiChatOptions(paramsBuilder, it, streaming)
+        }
 
+        val tools = mutableListOf<ChatCompletionTool>()
         if (prompt.options is ToolCallingChatOptions) {
-            val tools = (prompt.options as ToolCallingChatOptions).let {
+            (prompt.options as ToolCallingChatOptions).let {
                 toolCallingManager.resolveToolDefinitions(it).map { toolDefinition ->
-                    val parametersMap =
-                        ModelOptionsUtils.jsonToMap(toolDefinition.inputSchema())
-                    val jsonValue = JsonValue.from(parametersMap)
-                    ChatCompletionTool.builder()
-                        .function(
-                            FunctionDefinition.builder()
-                                .name(toolDefinition.name())
-                                .description(toolDefinition.description())
-                                .parameters(
-                                    FunctionParameters.builder()
-                                        .putAllAdditionalProperties((jsonValue as JsonObject).values)
-                                        .build()
-                                )
-                                .build()
+                    toolCache.get(
+                        toolDefinition.name(),
+                        toolDefinition.description(),
+                        toolDefinition.inputSchema(),
+                        null,
+                        canonical
+                    ) {
+                        buildChatCompletionTool(
+                            toolDefinition.name(),
+                            toolDefinition.description(),
+                            ModelOptionsUtils.jsonToMap(toolDefinition.inputSchema()),
+                            null,
+                            canonical
                         )
-                        .build()
+                    }
                 }
+            }.let {
+                tools.addAll(it)
             }
-            if (tools.isNotEmpty()) {
-                paramsBuilder.tools(tools)
+        }
+        (prompt.options as? OpenAiChatOptions)?.tools?.map { tool ->
+            val parameters = tool.function.parameters ?: mapOf()
+            toolCache.get(tool.function.name, tool.function.description, parameters, tool.function.strict, canonical) {
+                buildChatCompletionTool(
+                    tool.function.name,
+                    tool.function.description,
+                    parameters,
+                    tool.function.strict,
+                    canonical
+                )
             }
+        }?.let {
+            tools.addAll(it)
+        }
+        if (canonical) {
+            tools.sortBy { it.function().name() }
+        }
+        if (tools.isNotEmpty()) {
+            paramsBuilder.tools(tools)
         }
         return paramsBuilder.build()
     }
 
 
+    private fun applyOpenAiChatOptions(
+        paramsBuilder: ChatCompletionCreateParams.Builder,
+        options: OpenAiChatOptions,
+        streaming: Boolean
+    ) {
+        options.frequencyPenalty?.let {
+            paramsBuilder.frequencyPenalty(it)
+        }
+        options.presencePenalty?.let {
+            paramsBuilder.presencePenalty(it)
+        }
+        options.logitBias?.let { logitBias ->
+            paramsBuilder.logitBias(
+                ChatCompletionCreateParams.LogitBias.builder()
+                    .putAllAdditionalProperties(logitBias.mapValues { JsonValue.from(it.value) })
+                    .build()
+            )
+        }
+        options.logprobs?.let {
+            paramsBuilder.logprobs(it)
+        }
+        options.topLogprobs?.let {
+            paramsBuilder.topLogprobs(it.toLong())
+        }
+        options.maxTokens?.let {
+            paramsBuilder.maxTokens(it.toLong())
+        }
+        options.maxCompletionTokens?.let {
+            paramsBuilder.maxCompletionTokens(it.toLong())
+        }
+        options.n?.let {
+            paramsBuilder.n(it.toLong())
+        }
+        options.outputModalities?.let { modalities ->
+            paramsBuilder.modalities(modalities.map { ChatCompletionCreateParams.Modality.of(it) })
+        }
+        options.outputAudio?.let {
+            paramsBuilder.audio(
+                ChatCompletionAudioParam.builder()
+                    .voice(ChatCompletionAudioParam.Voice.of(it.voice().name.lowercase()))
+                    .format(ChatCompletionAudioParam.Format.of(it.format().name.lowercase()))
+                    .build()
+            )
+        }
+        options.responseFormat?.let {
+            applyResponseFormat(paramsBuilder, it)
+        }
+        if (streaming) {
+            paramsBuilder.streamOptions(
+                ChatCompletionStreamOptions.builder()
+                    .includeUsage(options.streamOptions?.includeUsage() ?: true)
+                    .build()
+            )
+        }
+        options.seed?.let {
+            paramsBuilder.seed(it.toLong())
+        }
+        options.stop?.let {
+            if (it.isNotEmpty()) {
+                paramsBuilder.stopOfStrings(it)
+            }
+        }
+        options.topP?.let {
+            paramsBuilder.topP(it)
+        }
+        options.toolChoice?.let {
+            paramsBuilder.toolChoice(buildToolChoice(it))
+        }
+        options.user?.let {
+            paramsBuilder.user(it)
+        }
+        options.parallelToolCalls?.let {
+            paramsBuilder.parallelToolCalls(it)
+        }
+        options.store?.let {
+            paramsBuilder.store(it)
+        }
+        options.metadata?.let { metadata ->
+            paramsBuilder.metadata(
+                Metadata.builder()
+                    .putAllAdditionalProperties(metadata.mapValues { JsonValue.from(it.value) })
+                    .build()
+            )
+        }
+        options.reasoningEffort?.let {
+            paramsBuilder.reasoningEffort(ReasoningEffort.of(it))
+        }
+        options.promptCacheKey?.let {
+            paramsBuilder.putAdditionalBodyProperty("prompt_cache_key", JsonValue.from(it))
+        }
+        options.httpHeaders?.forEach { (name, value) ->
+            paramsBuilder.putAdditionalHeader(name, value)
+        }
+    }
+
+    private fun applyResponseFormat(
+        paramsBuilder: ChatCompletionCreateParams.Builder,
+        responseFormat: ResponseFormat
+    ) {
+        when (responseFormat.type) {
+            ResponseFormat.Type.TEXT -> paramsBuilder.responseFormat(ResponseFormatText.builder().build())
+            ResponseFormat.Type.JSON_OBJECT -> paramsBuilder.responseFormat(
+                ResponseFormatJsonObject.builder().build()
+            )
+
+            ResponseFormat.Type.JSON_SCHEMA -> {
+                val jsonSchema = responseFormat.jsonSchema
+                    ?: throw IllegalArgumentException("JSON schema is required for response format JSON_SCHEMA")
+                val jsonSchemaBuilder = ResponseFormatJsonSchema.JsonSchema.builder()
+                    .name(jsonSchema.name)
+                    .schema(
+                        ResponseFormatJsonSchema.JsonSchema.Schema.builder()
+                            .putAllAdditionalProperties(
+                                (jsonSchema.schema ?: mapOf()).mapValues { JsonValue.from(it.value) })
+                            .build()
+                    )
+                jsonSchema.strict?.let {
+                    jsonSchemaBuilder.strict(it)
+                }
+                paramsBuilder.responseFormat(
+                    ResponseFormatJsonSchema.builder().jsonSchema(jsonSchemaBuilder.build()).build()
+                )
+            }
+
+            null -> {}
+        }
+    }
+
+    private fun buildToolChoice(toolChoice: Any): ChatCompletionToolChoiceOption {
+        val value = if (toolChoice is String && toolChoice.trim().startsWith("{")) {
+            ModelOptionsUtils.jsonToMap(toolChoice)
+        } else toolChoice
+        return when (value) {
+            is String -> ChatCompletionToolChoiceOption.ofAuto(ChatCompletionToolChoiceOption.Auto.of(value))
+            is Map<*, *> -> {
+                val name = (value["function"] as? Map<*, *>)?.get("name") as? String
+                    ?: throw IllegalArgumentException("Tool choice must specify a function name: $value")
+                ChatCompletionToolChoiceOption.ofNamedToolChoice(
+                    ChatCompletionNamedToolChoice.builder()
+                        .function(ChatCompletionNamedToolChoice.Function.builder().name(name).build())
+                        .build()
+                )
+            }
+
+            else -> throw IllegalArgumentException(
+                "Unsupported tool choice type: " + value.javaClass.simpleName
+            )
+        }
+    }
+
+    private fun buildChatCompletionTool(
+        name: String,
+        description: String?,
+        parameters: Map<String, Any>,
+        strict: Boolean?,
+        canonical: Boolean
+    ): ChatCompletionTool {
+        val jsonValue = JsonValue.from(if (canonical) PromptCanonicalizer.sortKeys(parameters) else parameters)
+        val functionBuilder = FunctionDefinition.builder()
+            .name(name)
+            .parameters(
+                FunctionParameters.builder()
+                    .putAllAdditionalProperties((jsonValue as JsonObject).values)
+                    .build()
+            )
+        description?.let {
+            functionBuilder.description(it)
+        }
+        strict?.let {
+            functionBuilder.strict(it)
+        }
+        return ChatCompletionTool.builder()
+            .function(functionBuilder.build())
+            .build()
+    }
+
     private fun buildGeneration(
         choice: ChatCompletion.Choice,
         metadata: Map<String, Any>
@@ -362,40 +889,61 @@ class OpenAIChatModel(
         return Generation(assistantMessage, metadataBuilder.build())
     }
 
-    private fun fromAudioData(audioData: Any): String {
-        return if (audioData is ByteArray) {
-            Base64.getEncoder().encodeToString(audioData)
-        } else throw IllegalArgumentException("Unsupported audio data type: " + audioData.javaClass.simpleName)
-    }
+    /**
+     * State of the tool calling loop of one [call] or [stream]. Rounds are bounded by
+     * [OpenAiChatOptions.getMaxToolIterations] and [OpenAiChatOptions.getToolLoopTimeout], and usage
+     * is accumulated across rounds.
+     */
+    private inner class ToolLoop(var prompt: Prompt) {
+        private val options = prompt.options as? OpenAiChatOptions
+        private val maxIterations = options?.maxToolIterations ?: DEFAULT_MAX_TOOL_ITERATIONS
+        val timeout: Duration? = options?.toolLoopTimeout
+        val deadline: Long? = timeout?.let { System.nanoTime() + it.toNanos() }
+        private var round = 0
+        private var metadata: ChatResponseMetadata? = null
 
-    private fun fromMediaData(mimeType: MimeType, mediaContentData: Any): String {
-        return when (mediaContentData) {
-            is ByteArray -> {
-                String.format(
-                    "data:%s;base64,%s",
-                    mimeType.toString(),
-                    Base64.getEncoder().encodeToString(mediaContentData)
-                )
-            }
+        @Volatile
+        var continueLoop = false
 
-            is String -> {
-                mediaContentData
+        fun executeToolCalls(response: ChatResponse): ToolExecutionResult {
+            if (round >= maxIterations) {
+                throw IllegalStateException("Tool calling did not finish within $maxIterations iterations")
             }
+            val remaining = deadline?.let { remaining(it) }
+            if (remaining != null && remaining.isZero) {
+                throw IllegalStateException("Tool loop did not finish within $timeout")
+            }
+            round++
+            val toolTimeout = listOfNotNull(options?.toolExecutionTimeout, remaining).minOrNull()
+            return this@OpenAIChatModel.executeToolCalls(prompt, response, round, toolTimeout)
+        }
 
-            else -> {
-                throw IllegalArgumentException(
-                    "Unsupported media data type: " + mediaContentData.javaClass.simpleName
-                )
+        fun next(toolExecutionResult: ToolExecutionResult) {
+            prompt = Prompt(toolExecutionResult.conversationHistory(), prompt.options)
+        }
+
+        fun addUsage(response: ChatResponse): ChatResponse {
+            if (response.metadata.usage.nativeUsage !is CompletionUsage) {
+                return response
             }
+            val result = metadata?.let {
+                ChatResponse.builder()
+                    .from(response)
+                    .metadata(OpenAiResponseMetadataSupport.addUsage(response.metadata, it))
+                    .build()
+            } ?: response
+            metadata = result.metadata
+            return result
+        }
+
+        fun remaining(deadline: Long): Duration {
+            return Duration.ofNanos((deadline - System.nanoTime()).coerceAtLeast(0))
         }
     }
 
-    private fun mergeHttpHeaders(
-        runtimeHttpHeaders: Map<String, String>,
-        defaultHttpHeaders: Map<String, String>
-    ): Map<String, String> {
-        val mergedHttpHeaders = HashMap(defaultHttpHeaders)
-        mergedHttpHeaders.putAll(runtimeHttpHeaders)
-        return mergedHttpHeaders
+    companion object {
+        const val DEFAULT_MAX_TOOL_ITERATIONS = 20
+        private const val DEFAULT_BULKHEAD_KEY = "default"
+        private val DEFAULT_OBSERVATION_CONVENTION = DefaultChatModelObservationConvention()
     }
 }
\ No newline at end of file
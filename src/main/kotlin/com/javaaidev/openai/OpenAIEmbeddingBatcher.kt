@@ -0,0 +1,94 @@
+package com.javaaidev.openai
+
+import org.springframework.ai.chat.metadata.DefaultUsage
+import org.springframework.ai.embedding.Embedding
+import org.springframework.ai.embedding.EmbeddingResponse
+import org.springframework.ai.embedding.EmbeddingResponseMetadata
+import org.springframework.ai.tokenizer.TokenCountEstimator
+
+/**
+ * Splits embedding inputs into batches that stay within the provider's per-request limits, and merges
+ * the responses of the batches back in the original input order.
+ */
+class OpenAIEmbeddingBatcher(private val tokenCountEstimator: TokenCountEstimator) {
+
+    class Batch(val offset: Int, val inputs: List<String>)
+
+    fun split(inputs: List<String>, maxItems: Int, maxTokens: Int): List<Batch> {
+        require(maxItems > 0) { "maxItems must be positive" }
+        require(maxTokens > 0) { "maxTokens must be positive" }
+        if (inputs.size <= maxItems && (inputs.size == 1 || maxUtf8Bytes(inputs) <= maxTokens)) {
+            return if (inputs.isEmpty()) listOf() else listOf(Batch(0, inputs))
+        }
+        val batches = mutableListOf<Batch>()
+        var start = 0
+        var tokens = 0
+        inputs.forEachIndexed { index, input ->
+            val inputTokens = tokenCountEstimator.estimate(input)
+            val size = index - start
+            if (size > 0 && (size >= maxItems || tokens + inputTokens > maxTokens)) {
+                batches.add(Batch(start, inputs.subList(start, index)))
+                start = index
+                tokens = 0
+            }
+            tokens += inputTokens
+        }
+        if (start < inputs.size) {
+            batches.add(Batch(start, inputs.subList(start, inputs.size)))
+        }
+        return batches
+    }
+
+    /**
+     * A token is at least one byte of UTF-8, and a UTF-16 char is at most three bytes, so this bound lets
+     * small inputs skip the tokenizer.
+     */
+    private fun maxUtf8Bytes(inputs: List<String>): Long {
+        return inputs.sumOf { it.length.toLong() * 3 }
+    }
+
+    /**
+     * Merges responses of [batches], which must be in the same order. Embedding indexes are shifted by
+     * the offset of their batch, and token usage is summed up.
+     */
+    fun merge(batches: List<Batch>, responses: List<EmbeddingResponse>): EmbeddingResponse {
+        require(batches.size == responses.size) { "Each batch must have exactly one response" }
+        if (responses.size == 1) {
+            return responses.first()
+        }
+        val embeddings = mutableListOf<Embedding>()
+        var promptTokens = 0
+        var totalTokens = 0
+        val nativeUsages = mutableListOf<Any>()
+        batches.zip(responses).forEach { (batch, response) ->
+            response.results.forEach {
+                embeddings.add(Embedding(it.output, batch.offset + it.index))
+            }
+            response.metadata.usage?.let { usage ->
+                promptTokens += usage.promptTokens ?: 0
+                totalTokens += usage.totalTokens ?: 0
+                usage.nativeUsage?.let { nativeUsages.add(it) }
+            }
+        }
+        embeddings.sortBy { it.index }
+        val model = responses.firstNotNullOfOrNull { it.metadata.model } ?: ""
+        return EmbeddingResponse(
+            embeddings,
+            EmbeddingResponseMetadata(model, DefaultUsage(promptTokens, 0, totalTokens, nativeUsages))
+        )
+    }
+
+    companion object {
+        /**
+         * Maximum number of inputs per request accepted by the OpenAI embeddings API.
+         */
+        const val DEFAULT_MAX_BATCH_SIZE = 2048
+
+        /**
+         * Maximum number of tokens per request accepted by the OpenAI embeddings API.
+         */
+        const val DEFAULT_MAX_BATCH_TOKENS = 300_000
+
+        const val DEFAULT_MAX_CONCURRENT_BATCHES = 4
+    }
+}
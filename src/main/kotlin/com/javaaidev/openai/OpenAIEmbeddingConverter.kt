@@ -0,0 +1,56 @@
+package com.javaaidev.openai
+
+import com.openai.models.embeddings.CreateEmbeddingResponse
+import org.springframework.ai.chat.metadata.DefaultUsage
+import org.springframework.ai.embedding.Embedding
+import org.springframework.ai.embedding.EmbeddingResponse
+import org.springframework.ai.embedding.EmbeddingResponseMetadata
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.*
+import com.openai.models.embeddings.Embedding as OpenAIEmbedding
+
+/**
+ * Converts OpenAI embedding responses to Spring AI [EmbeddingResponse].
+ *
+ * Embeddings returned with `encoding_format=base64` are decoded from little-endian float32 bytes
+ * straight into a `float[]`, without going through boxed lists.
+ */
+object OpenAIEmbeddingConverter {
+
+    fun toEmbeddingResponse(response: CreateEmbeddingResponse): EmbeddingResponse {
+        val embeddings = response.data().map { e ->
+            Embedding(toFloatArray(e), e.index().toInt())
+        }
+        val usage = response.usage()
+        return EmbeddingResponse(
+            embeddings,
+            EmbeddingResponseMetadata(
+                response.model(),
+                DefaultUsage(usage.promptTokens().toInt(), 0, usage.totalTokens().toInt(), usage)
+            )
+        )
+    }
+
+    fun toFloatArray(embedding: OpenAIEmbedding): FloatArray {
+        val base64 = embedding._embedding().asString()
+        if (base64.isPresent) {
+            return decodeBase64(base64.get())
+        }
+        val values = embedding.embedding()
+        val result = FloatArray(values.size)
+        for (i in values.indices) {
+            result[i] = values[i].toFloat()
+        }
+        return result
+    }
+
+    fun decodeBase64(value: String): FloatArray {
+        val floats = ByteBuffer.wrap(Base64.getDecoder().decode(value))
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .asFloatBuffer()
+        val result = FloatArray(floats.remaining())
+        floats.get(result)
+        return result
+    }
+}
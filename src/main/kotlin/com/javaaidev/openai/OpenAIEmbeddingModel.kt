@@ -1,22 +1,149 @@
 package com.javaaidev.openai
 
 import com.openai.client.OpenAIClient
+import com.openai.core.RequestOptions
+import com.openai.errors.RateLimitException
+import com.openai.models.embeddings.CreateEmbeddingResponse
 import com.openai.models.embeddings.EmbeddingCreateParams
-import org.springframework.ai.chat.metadata.EmptyUsage
+import io.micrometer.observation.ObservationRegistry
+import org.springframework.ai.chat.metadata.DefaultUsage
 import org.springframework.ai.document.Document
 import org.springframework.ai.embedding.*
+import org.springframework.ai.embedding.observation.DefaultEmbeddingModelObservationConvention
+import org.springframework.ai.embedding.observation.EmbeddingModelObservationContext
+import org.springframework.ai.embedding.observation.EmbeddingModelObservationConvention
+import org.springframework.ai.embedding.observation.EmbeddingModelObservationDocumentation
 import org.springframework.ai.model.ModelOptionsUtils
+import org.springframework.ai.observation.conventions.AiProvider
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator
+import org.springframework.ai.tokenizer.TokenCountEstimator
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Schedulers
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.Supplier
 
-class OpenAIEmbeddingModel(
+class OpenAIEmbeddingModel @JvmOverloads constructor(
     private val openAIClient: OpenAIClient,
     private val defaultOptions: OpenAIEmbeddingOptions? = null,
+    private val observationRegistry: ObservationRegistry = ObservationRegistry.NOOP,
+    tokenCountEstimator: TokenCountEstimator = JTokkitTokenCountEstimator(),
+    private val embeddingCache: EmbeddingCache? = null,
+    private val singleFlight: SingleFlight? = null,
+    microBatching: MicroBatchingConfig? = null,
+    private val rateLimiter: OpenAiRateLimiter? = null,
+    private val retryPolicy: OpenAiRetryPolicy? = null,
 ) :
     AbstractEmbeddingModel() {
-    override fun call(request: EmbeddingRequest): EmbeddingResponse {
-        val paramsBuilder = EmbeddingCreateParams.builder()
-            .inputOfArrayOfStrings(request.instructions)
+    private var observationConvention: EmbeddingModelObservationConvention? = null
+    private val batcher = OpenAIEmbeddingBatcher(tokenCountEstimator)
+    private val cacheHits = AtomicLong()
+    private val cacheMisses = AtomicLong()
+    private val microBatcher = microBatching?.let { config ->
+        EmbeddingMicroBatcher(config) { texts ->
+            call(EmbeddingRequest(texts, null)).results.map { it.output }
+        }
+    }
 
+    /**
+     * Number of inputs found in the [EmbeddingCache].
+     */
+    val cacheHitCount: Long
+        get() = cacheHits.get()
+
+    /**
+     * Number of inputs not found in the [EmbeddingCache].
+     */
+    val cacheMissCount: Long
+        get() = cacheMisses.get()
+
+    /**
+     * Number of requests sent by micro-batching of single-text embed calls.
+     */
+    val microBatchCount: Long
+        get() = microBatcher?.batchCount ?: 0
+
+    override fun call(request: EmbeddingRequest): EmbeddingResponse {
         val options = mergeOptions(request.options)
+        val observationContext = EmbeddingModelObservationContext.builder()
+            .embeddingRequest(EmbeddingRequest(request.instructions, options))
+            .provider(AiProvider.OPENAI.value())
+            .build()
+        return EmbeddingModelObservationDocumentation.EMBEDDING_MODEL_OPERATION
+            .observation(
+                observationConvention,
+                DEFAULT_OBSERVATION_CONVENTION,
+                { observationContext },
+                observationRegistry
+            )
+            .observe(Supplier {
+                cachedCall(request.instructions, options).also { observationContext.response = it }
+            })!!
+    }
+
+    /**
+     * Looks up inputs in the [EmbeddingCache] and only sends the misses to the API.
+     */
+    private fun cachedCall(inputs: List<String>, options: OpenAIEmbeddingOptions): EmbeddingResponse {
+        val cache = embeddingCache ?: return batchCall(inputs, options)
+        val keys = inputs.map { EmbeddingCache.key(options.model, options.dimensions, it) }
+        val embeddings = arrayOfNulls<FloatArray>(inputs.size)
+        val misses = LinkedHashMap<String, MutableList<Int>>()
+        keys.forEachIndexed { index, key ->
+            val cached = cache.get(key)
+            if (cached != null) {
+                embeddings[index] = cached
+            } else {
+                misses.getOrPut(key) { mutableListOf() }.add(index)
+            }
+        }
+        val missCount = misses.values.sumOf { it.size }
+        cacheHits.addAndGet((inputs.size - missCount).toLong())
+        cacheMisses.addAndGet(missCount.toLong())
+        val metadata = if (misses.isEmpty()) {
+            EmbeddingResponseMetadata(options.model ?: "", DefaultUsage(0, 0, 0))
+        } else {
+            val missIndexes = misses.values.toList()
+            val response = batchCall(missIndexes.map { inputs[it.first()] }, options)
+            response.results.forEach { embedding ->
+                val indexes = missIndexes[embedding.index]
+                indexes.forEach { embeddings[it] = embedding.output }
+                cache.put(keys[indexes.first()], embedding.output)
+            }
+            response.metadata
+        }
+        return EmbeddingResponse(
+            embeddings.mapIndexed { index, embedding ->
+                Embedding(embedding ?: throw IllegalStateException("No embedding for input $index"), index)
+            },
+            metadata
+        )
+    }
+
+    private fun batchCall(inputs: List<String>, options: OpenAIEmbeddingOptions): EmbeddingResponse {
+        val batches = batcher.split(
+            inputs,
+            options.maxBatchSize ?: OpenAIEmbeddingBatcher.DEFAULT_MAX_BATCH_SIZE,
+            options.maxBatchTokens ?: OpenAIEmbeddingBatcher.DEFAULT_MAX_BATCH_TOKENS
+        )
+        if (batches.size <= 1) {
+            return internalCall(inputs, options)
+        }
+        val concurrency = (options.maxConcurrentBatches
+            ?: OpenAIEmbeddingBatcher.DEFAULT_MAX_CONCURRENT_BATCHES).coerceAtLeast(1)
+        val responses = Flux.fromIterable(batches)
+            .flatMapSequential({ batch ->
+                Mono.fromCallable { internalCall(batch.inputs, options) }
+                    .subscribeOn(Schedulers.boundedElastic())
+            }, concurrency)
+            .collectList()
+            .block() ?: throw IllegalStateException("No embedding response")
+        return batcher.merge(batches, responses)
+    }
+
+    private fun internalCall(inputs: List<String>, options: OpenAIEmbeddingOptions): EmbeddingResponse {
+        val paramsBuilder = EmbeddingCreateParams.builder()
+            .inputOfArrayOfStrings(inputs)
 
         options.model?.let {
             paramsBuilder.model(it)
@@ -24,47 +151,97 @@ class OpenAIEmbeddingModel(
         options.dimensions?.let {
             paramsBuilder.dimensions(it.toLong())
         }
-        options.encodingFormat?.let {
-            paramsBuilder.encodingFormat(EmbeddingCreateParams.EncodingFormat.of(it))
-        }
+        paramsBuilder.encodingFormat(
+            EmbeddingCreateParams.EncodingFormat.of(options.encodingFormat ?: DEFAULT_ENCODING_FORMAT)
+        )
         options.user?.let {
             paramsBuilder.user(it)
         }
 
-        val response = openAIClient.embeddings().create(paramsBuilder.build())
-        val embeddings = response.data().map { e ->
-            Embedding(e.embedding().map { v -> v.toFloat() }.toFloatArray(), e.index().toInt())
+        val params = paramsBuilder.build()
+        val response = singleFlight?.execute(RequestKeys.of(params)) {
+            createEmbeddings(params, inputs)
+        } ?: createEmbeddings(params, inputs)
+        return OpenAIEmbeddingConverter.toEmbeddingResponse(response)
+    }
+
+    private fun createEmbeddings(params: EmbeddingCreateParams, inputs: List<String>): CreateEmbeddingResponse {
+        return retryPolicy?.execute(true) { createEmbeddings(params, inputs, it) }
+            ?: createEmbeddings(params, inputs, RequestOptions.none())
+    }
+
+    private fun createEmbeddings(
+        params: EmbeddingCreateParams,
+        inputs: List<String>,
+        requestOptions: RequestOptions
+    ): CreateEmbeddingResponse {
+        val limiter = rateLimiter ?: return openAIClient.embeddings().create(params, requestOptions)
+        val estimatedTokens = limiter.estimateTokens(inputs)
+        limiter.acquire(estimatedTokens)
+        val rawResponse = try {
+            openAIClient.withRawResponse().embeddings().create(params, requestOptions)
+        } catch (e: RateLimitException) {
+            limiter.onResponse(estimatedTokens, 0, OpenAiResponseMetadataSupport.rateLimit(e.headers()))
+            throw e
         }
-        return EmbeddingResponse(embeddings, EmbeddingResponseMetadata(response.model(), EmptyUsage()))
+        val response = rawResponse.parse()
+        limiter.onResponse(
+            estimatedTokens,
+            response.usage().totalTokens(),
+            OpenAiResponseMetadataSupport.rateLimit(rawResponse.headers())
+        )
+        return response
+    }
+
+    /**
+     * Use a custom [EmbeddingModelObservationConvention] instead of the default one.
+     */
+    fun setObservationConvention(observationConvention: EmbeddingModelObservationConvention) {
+        this.observationConvention = observationConvention
     }
 
+    /**
+     * [OpenAIEmbeddingOptions] are merged directly, because copying through [EmbeddingOptions] only keeps
+     * its properties.
+     */
     private fun mergeOptions(runtimeOptions: EmbeddingOptions?): OpenAIEmbeddingOptions {
         val defaultOptions = this.defaultOptions ?: OpenAIEmbeddingOptions.builder().build()
-        return ModelOptionsUtils.copyToTarget(
+        val options = runtimeOptions as? OpenAIEmbeddingOptions ?: ModelOptionsUtils.copyToTarget(
             runtimeOptions, EmbeddingOptions::class.java,
             OpenAIEmbeddingOptions::class.java
-        )?.let { options ->
-            OpenAIEmbeddingOptions.builder()
-                .model(ModelOptionsUtils.mergeOption(options.model, defaultOptions.model))
-                .dimensions(
-                    ModelOptionsUtils.mergeOption(
-                        options.dimensions,
-                        defaultOptions.dimensions
-                    )
-                )
-                .encodingFormat(
-                    ModelOptionsUtils.mergeOption(
-                        options.encodingFormat,
-                        defaultOptions.encodingFormat
-                    )
+        ) ?: return defaultOptions
+        return OpenAIEmbeddingOptions.builder()
+            .model(ModelOptionsUtils.mergeOption(options.model, defaultOptions.model))
+            .dimensions(ModelOptionsUtils.mergeOption(options.dimensions, defaultOptions.dimensions))
+            .encodingFormat(ModelOptionsUtils.mergeOption(options.encodingFormat, defaultOptions.encodingFormat))
+            .user(ModelOptionsUtils.mergeOption(options.user, defaultOptions.user))
+            .maxBatchSize(ModelOptionsUtils.mergeOption(options.maxBatchSize, defaultOptions.maxBatchSize))
+            .maxBatchTokens(ModelOptionsUtils.mergeOption(options.maxBatchTokens, defaultOptions.maxBatchTokens))
+            .maxConcurrentBatches(
+                ModelOptionsUtils.mergeOption(
+                    options.maxConcurrentBatches,
+                    defaultOptions.maxConcurrentBatches
                 )
-                .user(ModelOptionsUtils.mergeOption(options.user, defaultOptions.user))
-                .build()
-        } ?: defaultOptions
+            )
+            .build()
+    }
+
+    /**
+     * Single-text embed calls are micro-batched when [MicroBatchingConfig] is set.
+     */
+    override fun embed(text: String): FloatArray {
+        return microBatcher?.embed(text) ?: super.embed(text)
     }
 
     override fun embed(document: Document): FloatArray {
         return embed(document.formattedContent)
     }
 
+    companion object {
+        /**
+         * Base64 payloads are smaller than JSON number arrays and are decoded straight into `float[]`.
+         */
+        const val DEFAULT_ENCODING_FORMAT = "base64"
+        private val DEFAULT_OBSERVATION_CONVENTION = DefaultEmbeddingModelObservationConvention()
+    }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
 
 package com.javaaidev.openai;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -37,7 +38,7 @@ public class OpenAIEmbeddingOptions implements EmbeddingOptions {
      */
     private @JsonProperty("model") String model;
     /**
-     * The format to return the embeddings in. Can be either float or base64.
+     * The format to return the embeddings in. Can be either float or base64. Defaults to base64.
      */
     private @JsonProperty("encoding_format") String encodingFormat;
     /**
@@ -48,6 +49,18 @@ public class OpenAIEmbeddingOptions implements EmbeddingOptions {
      * A unique identifier representing your end-user, which can help OpenAI to monitor and detect abuse.
      */
     private @JsonProperty("user") String user;
+    /**
+     * Maximum number of inputs sent in one request. Larger inputs are split into batches.
+     */
+    private @JsonIgnore Integer maxBatchSize;
+    /**
+     * Maximum number of estimated tokens sent in one request. Larger inputs are split into batches.
+     */
+    private @JsonIgnore Integer maxBatchTokens;
+    /**
+     * Maximum number of batches sent concurrently.
+     */
+    private @JsonIgnore Integer maxConcurrentBatches;
     // @formatter:on
 
     public static Builder builder() {
@@ -88,6 +101,30 @@ public class OpenAIEmbeddingOptions implements EmbeddingOptions {
         this.user = user;
     }
 
+    public Integer getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    public void setMaxBatchSize(final Integer maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public Integer getMaxBatchTokens() {
+        return this.maxBatchTokens;
+    }
+
+    public void setMaxBatchTokens(final Integer maxBatchTokens) {
+        this.maxBatchTokens = maxBatchTokens;
+    }
+
+    public Integer getMaxConcurrentBatches() {
+        return this.maxConcurrentBatches;
+    }
+
+    public void setMaxConcurrentBatches(final Integer maxConcurrentBatches) {
+        this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
     public static class Builder {
 
         protected OpenAIEmbeddingOptions options;
@@ -116,6 +153,21 @@ public class OpenAIEmbeddingOptions implements EmbeddingOptions {
             return this;
         }
 
+        public Builder maxBatchSize(final Integer maxBatchSize) {
+            this.options.setMaxBatchSize(maxBatchSize);
+            return this;
+        }
+
+        public Builder maxBatchTokens(final Integer maxBatchTokens) {
+            this.options.setMaxBatchTokens(maxBatchTokens);
+            return this;
+        }
+
+        public Builder maxConcurrentBatches(final Integer maxConcurrentBatches) {
+            this.options.setMaxConcurrentBatches(maxConcurrentBatches);
+            return this;
+        }
+
 
         public OpenAIEmbeddingOptions build() {
             return this.options;
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -28,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.model.ModelOptionsUtils;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
@@ -87,6 +89,8 @@ public class OpenAiChatOptions implements ToolCallingChatOptions {
     private Map<String, String> metadata;
     @JsonProperty("reasoning_effort")
     private String reasoningEffort;
+    @JsonProperty("prompt_cache_key")
+    private String promptCacheKey;
     @JsonIgnore
     private List<ToolCallback> toolCallbacks = new ArrayList();
     @JsonIgnore
@@ -97,6 +101,16 @@ public class OpenAiChatOptions implements ToolCallingChatOptions {
     private Map<String, String> httpHeaders = new HashMap();
     @JsonIgnore
     private Map<String, Object> toolContext = new HashMap();
+    @JsonIgnore
+    private Boolean parallelToolExecution;
+    @JsonIgnore
+    private Duration toolExecutionTimeout;
+    @JsonIgnore
+    private Integer maxToolIterations;
+    @JsonIgnore
+    private Duration toolLoopTimeout;
+    @JsonIgnore
+    private Boolean canonicalPrompt;
 
     public OpenAiChatOptions() {
     }
@@ -106,15 +120,113 @@ public class OpenAiChatOptions implements ToolCallingChatOptions {
     }
 
     public static OpenAiChatOptions fromOptions(OpenAiChatOptions fromOptions) {
-        return builder().model(fromOptions.getModel()).frequencyPenalty(fromOptions.getFrequencyPenalty()).logitBias(fromOptions.getLogitBias()).logprobs(fromOptions.getLogprobs()).topLogprobs(fromOptions.getTopLogprobs()).maxTokens(fromOptions.getMaxTokens()).maxCompletionTokens(fromOptions.getMaxCompletionTokens()).N(fromOptions.getN()).outputModalities(fromOptions.getOutputModalities() != null ? new ArrayList(fromOptions.getOutputModalities()) : null).outputAudio(fromOptions.getOutputAudio()).presencePenalty(fromOptions.getPresencePenalty()).responseFormat(fromOptions.getResponseFormat()).streamUsage(fromOptions.getStreamUsage()).seed(fromOptions.getSeed()).stop(fromOptions.getStop() != null ? new ArrayList(fromOptions.getStop()) : null).temperature(fromOptions.getTemperature()).topP(fromOptions.getTopP()).tools(fromOptions.getTools()).toolChoice(fromOptions.getToolChoice()).user(fromOptions.getUser()).parallelToolCalls(fromOptions.getParallelToolCalls()).toolCallbacks(fromOptions.getToolCallbacks() != null ? new ArrayList(fromOptions.getToolCallbacks()) : null).toolNames(fromOptions.getToolNames() != null ? new HashSet(fromOptions.getToolNames()) : null).httpHeaders(fromOptions.getHttpHeaders() != null ? new HashMap(fromOptions.getHttpHeaders()) : null).internalToolExecutionEnabled(fromOptions.getInternalToolExecutionEnabled()).toolContext(fromOptions.getToolContext() != null ? new HashMap(fromOptions.getToolContext()) : null).store(fromOptions.getStore()).metadata(fromOptions.getMetadata()).reasoningEffort(fromOptions.getReasoningEffort()).build();
+        return builder().model(fromOptions.getModel()).frequencyPenalty(fromOptions.getFrequencyPenalty()).logitBias(fromOptions.getLogitBias() != null ? new HashMap(fromOptions.getLogitBias()) : null).logprobs(fromOptions.getLogprobs()).topLogprobs(fromOptions.getTopLogprobs()).maxTokens(fromOptions.getMaxTokens()).maxCompletionTokens(fromOptions.getMaxCompletionTokens()).N(fromOptions.getN()).outputModalities(fromOptions.getOutputModalities() != null ? new ArrayList(fromOptions.getOutputModalities()) : null).outputAudio(fromOptions.getOutputAudio()).presencePenalty(fromOptions.getPresencePenalty()).responseFormat(fromOptions.getResponseFormat()).streamOptions(fromOptions.getStreamOptions()).seed(fromOptions.getSeed()).stop(fromOptions.getStop() != null ? new ArrayList(fromOptions.getStop()) : null).temperature(fromOptions.getTemperature()).topP(fromOptions.getTopP()).tools(fromOptions.getTools() != null ? new ArrayList(fromOptions.getTools()) : null).toolChoice(fromOptions.getToolChoice()).user(fromOptions.getUser()).parallelToolCalls(fromOptions.getParallelToolCalls()).toolCallbacks(fromOptions.getToolCallbacks() != null ? new ArrayList(fromOptions.getToolCallbacks()) : null).toolNames(fromOptions.getToolNames() != null ? new HashSet(fromOptions.getToolNames()) : null).httpHeaders(fromOptions.getHttpHeaders() != null ? new HashMap(fromOptions.getHttpHeaders()) : null).internalToolExecutionEnabled(fromOptions.getInternalToolExecutionEnabled()).toolContext(fromOptions.getToolContext() != null ? new HashMap(fromOptions.getToolContext()) : null).store(fromOptions.getStore()).metadata(fromOptions.getMetadata() != null ? new HashMap(fromOptions.getMetadata()) : null).reasoningEffort(fromOptions.getReasoningEffort()).parallelToolExecution(fromOptions.getParallelToolExecution()).toolExecutionTimeout(fromOptions.getToolExecutionTimeout()).maxToolIterations(fromOptions.getMaxToolIterations()).toolLoopTimeout(fromOptions.getToolLoopTimeout()).promptCacheKey(fromOptions.getPromptCacheKey()).canonicalPrompt(fromOptions.getCanonicalPrompt()).build();
+    }
+
+    /**
+     * Converts generic {@link ChatOptions} without reflection. {@link OpenAiChatOptions} are returned as is.
+     */
+    public static OpenAiChatOptions fromChatOptions(ChatOptions chatOptions) {
+        if (chatOptions instanceof OpenAiChatOptions) {
+            return (OpenAiChatOptions) chatOptions;
+        }
+        OpenAiChatOptions options = new OpenAiChatOptions();
+        options.model = chatOptions.getModel();
+        options.frequencyPenalty = chatOptions.getFrequencyPenalty();
+        options.maxTokens = chatOptions.getMaxTokens();
+        options.presencePenalty = chatOptions.getPresencePenalty();
+        options.stop = chatOptions.getStopSequences() != null ? new ArrayList<>(chatOptions.getStopSequences()) : null;
+        options.temperature = chatOptions.getTemperature();
+        options.topP = chatOptions.getTopP();
+        if (chatOptions instanceof ToolCallingChatOptions) {
+            ToolCallingChatOptions toolCallingChatOptions = (ToolCallingChatOptions) chatOptions;
+            if (toolCallingChatOptions.getToolCallbacks() != null) {
+                options.toolCallbacks = new ArrayList<>(toolCallingChatOptions.getToolCallbacks());
+            }
+            if (toolCallingChatOptions.getToolNames() != null) {
+                options.toolNames = new HashSet<>(toolCallingChatOptions.getToolNames());
+            }
+            options.internalToolExecutionEnabled = toolCallingChatOptions.getInternalToolExecutionEnabled();
+            if (toolCallingChatOptions.getToolContext() != null) {
+                options.toolContext = new HashMap<>(toolCallingChatOptions.getToolContext());
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Merges runtime options over default options without reflection. Non-null runtime values win, HTTP
+     * headers and tool context are combined, and tool callbacks and names follow the
+     * {@link ToolCallingChatOptions} merge rules. Collections are copied, so the merged options don't share
+     * them with the runtime or default options.
+     */
+    public static OpenAiChatOptions merge(OpenAiChatOptions runtimeOptions, OpenAiChatOptions defaultOptions) {
+        OpenAiChatOptions options = new OpenAiChatOptions();
+        options.model = ModelOptionsUtils.mergeOption(runtimeOptions.model, defaultOptions.model);
+        options.frequencyPenalty = ModelOptionsUtils.mergeOption(runtimeOptions.frequencyPenalty, defaultOptions.frequencyPenalty);
+        options.logitBias = copyOf(ModelOptionsUtils.mergeOption(runtimeOptions.logitBias, defaultOptions.logitBias));
+        options.logprobs = ModelOptionsUtils.mergeOption(runtimeOptions.logprobs, defaultOptions.logprobs);
+        options.topLogprobs = ModelOptionsUtils.mergeOption(runtimeOptions.topLogprobs, defaultOptions.topLogprobs);
+        options.maxTokens = ModelOptionsUtils.mergeOption(runtimeOptions.maxTokens, defaultOptions.maxTokens);
+        options.maxCompletionTokens = ModelOptionsUtils.mergeOption(runtimeOptions.maxCompletionTokens, defaultOptions.maxCompletionTokens);
+        options.n = ModelOptionsUtils.mergeOption(runtimeOptions.n, defaultOptions.n);
+        options.outputModalities = copyOf(ModelOptionsUtils.mergeOption(runtimeOptions.outputModalities, defaultOptions.outputModalities));
+        options.outputAudio = ModelOptionsUtils.mergeOption(runtimeOptions.outputAudio, defaultOptions.outputAudio);
+        options.presencePenalty = ModelOptionsUtils.mergeOption(runtimeOptions.presencePenalty, defaultOptions.presencePenalty);
+        options.responseFormat = ModelOptionsUtils.mergeOption(runtimeOptions.responseFormat, defaultOptions.responseFormat);
+        options.streamOptions = ModelOptionsUtils.mergeOption(runtimeOptions.streamOptions, defaultOptions.streamOptions);
+        options.seed = ModelOptionsUtils.mergeOption(runtimeOptions.seed, defaultOptions.seed);
+        options.stop = copyOf(ModelOptionsUtils.mergeOption(runtimeOptions.stop, defaultOptions.stop));
+        options.temperature = ModelOptionsUtils.mergeOption(runtimeOptions.temperature, defaultOptions.temperature);
+        options.topP = ModelOptionsUtils.mergeOption(runtimeOptions.topP, defaultOptions.topP);
+        options.tools = copyOf(ModelOptionsUtils.mergeOption(runtimeOptions.tools, defaultOptions.tools));
+        options.toolChoice = ModelOptionsUtils.mergeOption(runtimeOptions.toolChoice, defaultOptions.toolChoice);
+        options.user = ModelOptionsUtils.mergeOption(runtimeOptions.user, defaultOptions.user);
+        options.parallelToolCalls = ModelOptionsUtils.mergeOption(runtimeOptions.parallelToolCalls, defaultOptions.parallelToolCalls);
+        options.store = ModelOptionsUtils.mergeOption(runtimeOptions.store, defaultOptions.store);
+        options.metadata = copyOf(ModelOptionsUtils.mergeOption(runtimeOptions.metadata, defaultOptions.metadata));
+        options.reasoningEffort = ModelOptionsUtils.mergeOption(runtimeOptions.reasoningEffort, defaultOptions.reasoningEffort);
+        options.promptCacheKey = ModelOptionsUtils.mergeOption(runtimeOptions.promptCacheKey, defaultOptions.promptCacheKey);
+        options.toolCallbacks = ToolCallingChatOptions.mergeToolCallbacks(runtimeOptions.toolCallbacks, defaultOptions.toolCallbacks);
+        options.toolNames = ToolCallingChatOptions.mergeToolNames(runtimeOptions.toolNames, defaultOptions.toolNames);
+        options.internalToolExecutionEnabled = ModelOptionsUtils.mergeOption(runtimeOptions.internalToolExecutionEnabled, defaultOptions.internalToolExecutionEnabled);
+        Map<String, String> httpHeaders = new HashMap<>();
+        if (defaultOptions.httpHeaders != null) {
+            httpHeaders.putAll(defaultOptions.httpHeaders);
+        }
+        if (runtimeOptions.httpHeaders != null) {
+            httpHeaders.putAll(runtimeOptions.httpHeaders);
+        }
+        options.httpHeaders = httpHeaders;
+        options.toolContext = ToolCallingChatOptions.mergeToolContext(runtimeOptions.toolContext, defaultOptions.toolContext);
+        options.parallelToolExecution = ModelOptionsUtils.mergeOption(runtimeOptions.parallelToolExecution, defaultOptions.parallelToolExecution);
+        options.toolExecutionTimeout = ModelOptionsUtils.mergeOption(runtimeOptions.toolExecutionTimeout, defaultOptions.toolExecutionTimeout);
+        options.maxToolIterations = ModelOptionsUtils.mergeOption(runtimeOptions.maxToolIterations, defaultOptions.maxToolIterations);
+        options.toolLoopTimeout = ModelOptionsUtils.mergeOption(runtimeOptions.toolLoopTimeout, defaultOptions.toolLoopTimeout);
+        options.canonicalPrompt = ModelOptionsUtils.mergeOption(runtimeOptions.canonicalPrompt, defaultOptions.canonicalPrompt);
+        return options;
+    }
+
+    @Nullable
+    private static <T> List<T> copyOf(@Nullable List<T> list) {
+        return list != null ? new ArrayList<>(list) : null;
+    }
+
+    @Nullable
+    private static <K, V> Map<K, V> copyOf(@Nullable Map<K, V> map) {
+        return map != null ? new HashMap<>(map) : null;
     }
 
     public Boolean getStreamUsage() {
-        return this.streamOptions != null;
+        return this.streamOptions != null && Boolean.TRUE.equals(this.streamOptions.includeUsage());
     }
 
+    /**
+     * Disabling stream usage is kept as {@code include_usage=false}, so it's not replaced by the default of
+     * requesting usage.
+     */
     public void setStreamUsage(Boolean enableStreamUsage) {
-        this.streamOptions = enableStreamUsage ? StreamOptions.INCLUDE_USAGE : null;
+        this.streamOptions = enableStreamUsage ? StreamOptions.INCLUDE_USAGE : new StreamOptions(false);
     }
 
     public String getModel() {
@@ -378,12 +490,70 @@ public class OpenAiChatOptions implements ToolCallingChatOptions {
         this.reasoningEffort = reasoningEffort;
     }
 
+    public String getPromptCacheKey() {
+        return this.promptCacheKey;
+    }
+
+    public void setPromptCacheKey(String promptCacheKey) {
+        this.promptCacheKey = promptCacheKey;
+    }
+
+    @JsonIgnore
+    public Boolean getParallelToolExecution() {
+        return this.parallelToolExecution;
+    }
+
+    @JsonIgnore
+    public void setParallelToolExecution(Boolean parallelToolExecution) {
+        this.parallelToolExecution = parallelToolExecution;
+    }
+
+    @JsonIgnore
+    public Duration getToolExecutionTimeout() {
+        return this.toolExecutionTimeout;
+    }
+
+    @JsonIgnore
+    public void setToolExecutionTimeout(Duration toolExecutionTimeout) {
+        this.toolExecutionTimeout = toolExecutionTimeout;
+    }
+
+    @JsonIgnore
+    public Integer getMaxToolIterations() {
+        return this.maxToolIterations;
+    }
+
+    @JsonIgnore
+    public void setMaxToolIterations(Integer maxToolIterations) {
+        this.maxToolIterations = maxToolIterations;
+    }
+
+    @JsonIgnore
+    public Duration getToolLoopTimeout() {
+        return this.toolLoopTimeout;
+    }
+
+    @JsonIgnore
+    public void setToolLoopTimeout(Duration toolLoopTimeout) {
+        this.toolLoopTimeout = toolLoopTimeout;
+    }
+
+    @JsonIgnore
+    public Boolean getCanonicalPrompt() {
+        return this.canonicalPrompt;
+    }
+
+    @JsonIgnore
+    public void setCanonicalPrompt(Boolean canonicalPrompt) {
+        this.canonicalPrompt = canonicalPrompt;
+    }
+
     public OpenAiChatOptions copy() {
         return fromOptions(this);
     }
 
     public int hashCode() {
-        return Objects.hash(new Object[]{this.model, this.frequencyPenalty, this.logitBias, this.logprobs, this.topLogprobs, this.maxTokens, this.maxCompletionTokens, this.n, this.presencePenalty, this.responseFormat, this.streamOptions, this.seed, this.stop, this.temperature, this.topP, this.tools, this.toolChoice, this.user, this.parallelToolCalls, this.toolCallbacks, this.toolNames, this.httpHeaders, this.internalToolExecutionEnabled, this.toolContext, this.outputModalities, this.outputAudio, this.store, this.metadata, this.reasoningEffort});
+        return Objects.hash(new Object[]{this.model, this.frequencyPenalty, this.logitBias, this.logprobs, this.topLogprobs, this.maxTokens, this.maxCompletionTokens, this.n, this.presencePenalty, this.responseFormat, this.streamOptions, this.seed, this.stop, this.temperature, this.topP, this.tools, this.toolChoice, this.user, this.parallelToolCalls, this.toolCallbacks, this.toolNames, this.httpHeaders, this.internalToolExecutionEnabled, this.toolContext, this.outputModalities, this.outputAudio, this.store, this.metadata, this.reasoningEffort, this.parallelToolExecution, this.toolExecutionTimeout, this.maxToolIterations, this.toolLoopTimeout, this.promptCacheKey, this.canonicalPrompt});
     }
 
     public boolean equals(Object o) {
@@ -391,7 +561,7 @@ public class OpenAiChatOptions implements ToolCallingChatOptions {
             return true;
         } else if (o != null && this.getClass() == o.getClass()) {
             OpenAiChatOptions other = (OpenAiChatOptions)o;
-            return Objects.equals(this.model, other.model) && Objects.equals(this.frequencyPenalty, other.frequencyPenalty) && Objects.equals(this.logitBias, other.logitBias) && Objects.equals(this.logprobs, other.logprobs) && Objects.equals(this.topLogprobs, other.topLogprobs) && Objects.equals(this.maxTokens, other.maxTokens) && Objects.equals(this.maxCompletionTokens, other.maxCompletionTokens) && Objects.equals(this.n, other.n) && Objects.equals(this.presencePenalty, other.presencePenalty) && Objects.equals(this.responseFormat, other.responseFormat) && Objects.equals(this.streamOptions, other.streamOptions) && Objects.equals(this.seed, other.seed) && Objects.equals(this.stop, other.stop) && Objects.equals(this.temperature, other.temperature) && Objects.equals(this.topP, other.topP) && Objects.equals(this.tools, other.tools) && Objects.equals(this.toolChoice, other.toolChoice) && Objects.equals(this.user, other.user) && Objects.equals(this.parallelToolCalls, other.parallelToolCalls) && Objects.equals(this.toolCallbacks, other.toolCallbacks) && Objects.equals(this.toolNames, other.toolNames) && Objects.equals(this.httpHeaders, other.httpHeaders) && Objects.equals(this.toolContext, other.toolContext) && Objects.equals(this.internalToolExecutionEnabled, other.internalToolExecutionEnabled) && Objects.equals(this.outputModalities, other.outputModalities) && Objects.equals(this.outputAudio, other.outputAudio) && Objects.equals(this.store, other.store) && Objects.equals(this.metadata, other.metadata) && Objects.equals(this.reasoningEffort, other.reasoningEffort);
+            return Objects.equals(this.model, other.model) && Objects.equals(this.frequencyPenalty, other.frequencyPenalty) && Objects.equals(this.logitBias, other.logitBias) && Objects.equals(this.logprobs, other.logprobs) && Objects.equals(this.topLogprobs, other.topLogprobs) && Objects.equals(this.maxTokens, other.maxTokens) && Objects.equals(this.maxCompletionTokens, other.maxCompletionTokens) && Objects.equals(this.n, other.n) && Objects.equals(this.presencePenalty, other.presencePenalty) && Objects.equals(this.responseFormat, other.responseFormat) && Objects.equals(this.streamOptions, other.streamOptions) && Objects.equals(this.seed, other.seed) && Objects.equals(this.stop, other.stop) && Objects.equals(this.temperature, other.temperature) && Objects.equals(this.topP, other.topP) && Objects.equals(this.tools, other.tools) && Objects.equals(this.toolChoice, other.toolChoice) && Objects.equals(this.user, other.user) && Objects.equals(this.parallelToolCalls, other.parallelToolCalls) && Objects.equals(this.toolCallbacks, other.toolCallbacks) && Objects.equals(this.toolNames, other.toolNames) && Objects.equals(this.httpHeaders, other.httpHeaders) && Objects.equals(this.toolContext, other.toolContext) && Objects.equals(this.internalToolExecutionEnabled, other.internalToolExecutionEnabled) && Objects.equals(this.outputModalities, other.outputModalities) && Objects.equals(this.outputAudio, other.outputAudio) && Objects.equals(this.store, other.store) && Objects.equals(this.metadata, other.metadata) && Objects.equals(this.reasoningEffort, other.reasoningEffort) && Objects.equals(this.parallelToolExecution, other.parallelToolExecution) && Objects.equals(this.toolExecutionTimeout, other.toolExecutionTimeout) && Objects.equals(this.maxToolIterations, other.maxToolIterations) && Objects.equals(this.toolLoopTimeout, other.toolLoopTimeout) && Objects.equals(this.promptCacheKey, other.promptCacheKey) && Objects.equals(this.canonicalPrompt, other.canonicalPrompt);
         } else {
             return false;
         }
@@ -478,7 +648,12 @@ public class OpenAiChatOptions implements ToolCallingChatOptions {
         }
 
         public Builder streamUsage(boolean enableStreamUsage) {
-            this.options.streamOptions = enableStreamUsage ? StreamOptions.INCLUDE_USAGE : null;
+            this.options.streamOptions = enableStreamUsage ? StreamOptions.INCLUDE_USAGE : new StreamOptions(false);
+            return this;
+        }
+
+        public Builder streamOptions(StreamOptions streamOptions) {
+            this.options.streamOptions = streamOptions;
             return this;
         }
 
@@ -580,6 +755,40 @@ public class OpenAiChatOptions implements ToolCallingChatOptions {
             return this;
         }
 
+        public Builder promptCacheKey(String promptCacheKey) {
+            this.options.promptCacheKey = promptCacheKey;
+            return this;
+        }
+
+        public Builder parallelToolExecution(Boolean parallelToolExecution) {
+            this.options.parallelToolExecution = parallelToolExecution;
+            return this;
+        }
+
+        public Builder toolExecutionTimeout(Duration toolExecutionTimeout) {
+            this.options.toolExecutionTimeout = toolExecutionTimeout;
+            return this;
+        }
+
+        public Builder maxToolIterations(Integer maxToolIterations) {
+            this.options.maxToolIterations = maxToolIterations;
+            return this;
+        }
+
+        public Builder toolLoopTimeout(Duration toolLoopTimeout) {
+            this.options.toolLoopTimeout = toolLoopTimeout;
+            return this;
+        }
+
+        /**
+         * Sorts tools by name and schema keys, and normalizes whitespace of system messages, so prompts
+         * with the same content have a byte-identical prefix for prompt caching.
+         */
+        public Builder canonicalPrompt(Boolean canonicalPrompt) {
+            this.options.canonicalPrompt = canonicalPrompt;
+            return this;
+        }
+
         public OpenAiChatOptions build() {
             return this.options;
         }
@@ -0,0 +1,109 @@
+package com.javaaidev.openai
+
+import org.springframework.ai.content.Media
+import org.springframework.core.io.Resource
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.InputStream
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+
+/**
+ * Encodes media data to base64 for OpenAI content parts.
+ *
+ * Besides `byte[]`, media data can be an [InputStream], [Path] or [File], which is read and encoded in
+ * chunks without loading the raw bytes at once. `Media.builder().data(Resource)` reads a [Resource] into a
+ * `byte[]` itself. A `String` is used as is, e.g. an image URL.
+ *
+ * The first encoded form of a [Media] instance, e.g. the data URL of an image or the base64 of audio, is
+ * memoized while the media is reachable, shared by all encoders, so media in the conversation history is
+ * encoded only once across tool rounds and models. The other form is derived from it without being kept.
+ * An [InputStream] can only be read once, so encoding a stream that was already read by another [Media]
+ * fails.
+ */
+class OpenAiMediaEncoder {
+
+    /**
+     * Returns a `data:` URL of the media, or the data itself if it's a `String`.
+     */
+    fun toDataUrl(media: Media): String {
+        val data = media.data
+        if (data is String) {
+            return data
+        }
+        val prefix = "data:${media.mimeType};base64,"
+        val encoded = encodedMedia.getOrPut(media) { encode(data, prefix) }
+        return if (encoded.startsWith(DATA_URL_SCHEME)) encoded else prefix + encoded
+    }
+
+    /**
+     * Returns the media data encoded as base64.
+     */
+    fun toBase64(media: Media): String {
+        val encoded = encodedMedia.getOrPut(media) { encode(media.data, null) }
+        return if (encoded.startsWith(DATA_URL_SCHEME)) encoded.substring(encoded.indexOf(',') + 1) else encoded
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 64 * 1024
+
+        private const val DATA_URL_SCHEME = "data:"
+
+        /**
+         * Data URL or base64, whichever was requested first. Base64 never starts with [DATA_URL_SCHEME].
+         */
+        private val encodedMedia = Collections.synchronizedMap(WeakHashMap<Media, String>())
+        private val consumedStreams = Collections.synchronizedMap(WeakHashMap<InputStream, Boolean>())
+
+        /**
+         * Encodes [data] to base64, preceded by [prefix]. Only the encoded bytes and the resulting string
+         * are held in memory.
+         */
+        @JvmStatic
+        fun encode(data: Any, prefix: String?): String {
+            val prefixBytes = prefix?.toByteArray(StandardCharsets.US_ASCII) ?: ByteArray(0)
+            val output = ByteArrayOutputStream(prefixBytes.size + encodedLength(sizeOf(data)))
+            output.write(prefixBytes)
+            Base64.getEncoder().wrap(output).use { encoder ->
+                when (data) {
+                    is ByteArray -> encoder.write(data)
+                    else -> openStream(data).use { it.copyTo(encoder, BUFFER_SIZE) }
+                }
+            }
+            return output.toString(StandardCharsets.US_ASCII)
+        }
+
+        private fun openStream(data: Any): InputStream {
+            return when (data) {
+                is InputStream -> {
+                    check(consumedStreams.put(data, true) == null) { "Media input stream was already read" }
+                    data
+                }
+                is Resource -> data.inputStream
+                is Path -> Files.newInputStream(data)
+                is File -> Files.newInputStream(data.toPath())
+                else -> throw IllegalArgumentException("Unsupported media data type: " + data.javaClass.simpleName)
+            }
+        }
+
+        private fun sizeOf(data: Any): Long {
+            return try {
+                when (data) {
+                    is ByteArray -> data.size.toLong()
+                    is Resource -> data.contentLength()
+                    is Path -> Files.size(data)
+                    is File -> data.length()
+                    else -> 0
+                }
+            } catch (e: Exception) {
+                0
+            }
+        }
+
+        private fun encodedLength(size: Long): Int {
+            return ((size + 2) / 3 * 4).coerceIn(32, Int.MAX_VALUE.toLong() - 8).toInt()
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.javaaidev.openai
+
+import io.micrometer.common.KeyValue
+import io.micrometer.observation.Observation
+import io.micrometer.observation.ObservationRegistry
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.Supplier
+
+/**
+ * Observations recorded in addition to the standard Spring AI `gen_ai` observations.
+ */
+object OpenAiObservationSupport {
+    const val STREAM_FIRST_CHUNK = "gen_ai.client.stream.first_chunk"
+    const val STREAM_LAST_CHUNK = "gen_ai.client.stream.last_chunk"
+    const val TOOL_ROUND = "gen_ai.client.tool_round"
+
+    const val REQUEST_MODEL = "gen_ai.request.model"
+    const val STREAM_CHUNK_COUNT = "gen_ai.stream.chunk_count"
+    const val TOOL_ROUND_INDEX = "gen_ai.tool.round"
+    const val TOOL_CALL_COUNT = "gen_ai.tool.call_count"
+
+    /**
+     * Runs one round of tool execution inside a [TOOL_ROUND] observation.
+     */
+    fun <T> observeToolRound(
+        registry: ObservationRegistry,
+        model: String?,
+        round: Int,
+        toolCallCount: Int,
+        execution: Supplier<T>
+    ): T {
+        return Observation.createNotStarted(TOOL_ROUND, registry)
+            .lowCardinalityKeyValue(REQUEST_MODEL, model ?: KeyValue.NONE_VALUE)
+            .highCardinalityKeyValue(TOOL_ROUND_INDEX, round.toString())
+            .highCardinalityKeyValue(TOOL_CALL_COUNT, toolCallCount.toString())
+            .observe(execution)!!
+    }
+
+    /**
+     * Times the first and last chunk of a streaming response and counts its chunks.
+     */
+    class StreamObserver(registry: ObservationRegistry, parent: Observation?, model: String?) {
+        private val firstChunk = createObservation(STREAM_FIRST_CHUNK, registry, parent, model)
+        private val lastChunk = createObservation(STREAM_LAST_CHUNK, registry, parent, model)
+        private val chunkCount = AtomicLong()
+        private val stopped = AtomicBoolean(false)
+
+        fun onChunk() {
+            if (chunkCount.getAndIncrement() == 0L) {
+                firstChunk.stop()
+            }
+        }
+
+        fun onError(error: Throwable) {
+            if (chunkCount.get() == 0L) {
+                firstChunk.error(error)
+            }
+            lastChunk.error(error)
+        }
+
+        fun onTerminate() {
+            if (!stopped.compareAndSet(false, true)) {
+                return
+            }
+            val count = chunkCount.get()
+            if (count == 0L) {
+                firstChunk.stop()
+            }
+            lastChunk.highCardinalityKeyValue(STREAM_CHUNK_COUNT, count.toString())
+            lastChunk.stop()
+        }
+
+        private fun createObservation(
+            name: String,
+            registry: ObservationRegistry,
+            parent: Observation?,
+            model: String?
+        ): Observation {
+            return Observation.createNotStarted(name, registry)
+                .parentObservation(parent)
+                .lowCardinalityKeyValue(REQUEST_MODEL, model ?: KeyValue.NONE_VALUE)
+                .start()
+        }
+    }
+}
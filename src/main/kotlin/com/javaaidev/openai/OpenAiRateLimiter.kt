@@ -0,0 +1,165 @@
+package com.javaaidev.openai
+
+import org.springframework.ai.chat.metadata.RateLimit
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator
+import org.springframework.ai.tokenizer.TokenCountEstimator
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.math.ceil
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Client-side token buckets for requests per minute and tokens per minute.
+ *
+ * Callers acquire one request and the estimated tokens before sending a request, and wait in FIFO order
+ * when either bucket is empty. Buckets are corrected from the actual token usage and from the
+ * `x-ratelimit-*` response headers, which also account for requests sent by other clients of the same
+ * organization.
+ */
+class OpenAiRateLimiter @JvmOverloads constructor(
+    requestsPerMinute: Long,
+    tokensPerMinute: Long,
+    private val tokenCountEstimator: TokenCountEstimator = JTokkitTokenCountEstimator(),
+    private val clock: Clock = Clock.systemUTC(),
+) {
+    init {
+        require(requestsPerMinute > 0) { "requestsPerMinute must be positive" }
+        require(tokensPerMinute > 0) { "tokensPerMinute must be positive" }
+    }
+
+    private class Bucket(var capacity: Double, var updatedAt: Long) {
+        var available = capacity
+        var blockedUntil = 0L
+
+        fun refill(now: Long) {
+            if (now > updatedAt) {
+                available = min(capacity, available + (now - updatedAt) * capacity / MILLIS_PER_MINUTE)
+                updatedAt = now
+            }
+        }
+
+        /**
+         * Requests larger than the capacity only wait for a full bucket.
+         */
+        fun waitMillis(amount: Double, now: Long): Long {
+            refill(now)
+            if (now < blockedUntil) {
+                return blockedUntil - now
+            }
+            val missing = min(amount, capacity) - available
+            return if (missing <= 0) 0 else ceil(missing * MILLIS_PER_MINUTE / capacity).toLong()
+        }
+
+        fun update(limit: Long?, remaining: Long?, reset: Duration?, now: Long) {
+            refill(now)
+            if (limit != null && limit > 0) {
+                capacity = limit.toDouble()
+                available = min(available, capacity)
+            }
+            if (remaining != null) {
+                available = min(available, remaining.toDouble())
+                if (remaining <= 0 && reset != null) {
+                    blockedUntil = max(blockedUntil, now + reset.toMillis())
+                }
+            }
+        }
+    }
+
+    private val queue = ReentrantLock(true)
+    private val requests = Bucket(requestsPerMinute.toDouble(), clock.millis())
+    private val tokens = Bucket(tokensPerMinute.toDouble(), clock.millis())
+
+    /**
+     * Estimates tokens of a request with [texts] and at most [maxOutputTokens] output tokens, which
+     * OpenAI counts against the limit when the request is sent.
+     */
+    fun estimateTokens(texts: Iterable<String?>, maxOutputTokens: Int? = null): Long {
+        return texts.sumOf { if (it.isNullOrEmpty()) 0L else tokenCountEstimator.estimate(it).toLong() } +
+                (maxOutputTokens ?: 0)
+    }
+
+    /**
+     * Blocks until a request with [estimatedTokens] tokens can be sent. Callers are served in arrival order.
+     */
+    fun acquire(estimatedTokens: Long) {
+        queue.lockInterruptibly()
+        try {
+            while (true) {
+                val waitMillis = tryAcquireOrWait(estimatedTokens)
+                if (waitMillis == 0L) {
+                    return
+                }
+                TimeUnit.MILLISECONDS.sleep(waitMillis)
+            }
+        } finally {
+            queue.unlock()
+        }
+    }
+
+    /**
+     * Returns `false` without waiting when a request with [estimatedTokens] tokens can't be sent now.
+     */
+    fun tryAcquire(estimatedTokens: Long): Boolean {
+        if (!queue.tryLock()) {
+            return false
+        }
+        try {
+            return tryAcquireOrWait(estimatedTokens) == 0L
+        } finally {
+            queue.unlock()
+        }
+    }
+
+    @Synchronized
+    private fun tryAcquireOrWait(estimatedTokens: Long): Long {
+        val now = clock.millis()
+        val waitMillis = max(requests.waitMillis(1.0, now), tokens.waitMillis(estimatedTokens.toDouble(), now))
+        if (waitMillis == 0L) {
+            requests.available -= 1
+            tokens.available -= estimatedTokens
+        }
+        return waitMillis
+    }
+
+    /**
+     * Corrects the buckets after a response, with the difference between [estimatedTokens] and
+     * [usedTokens], and with the [rateLimit] from response headers.
+     */
+    @Synchronized
+    fun onResponse(estimatedTokens: Long, usedTokens: Long?, rateLimit: RateLimit?) {
+        val now = clock.millis()
+        if (usedTokens != null) {
+            tokens.refill(now)
+            tokens.available = min(tokens.capacity, tokens.available + estimatedTokens - usedTokens)
+        }
+        if (rateLimit != null) {
+            requests.update(rateLimit.requestsLimit, rateLimit.requestsRemaining, rateLimit.requestsReset, now)
+            tokens.update(rateLimit.tokensLimit, rateLimit.tokensRemaining, rateLimit.tokensReset, now)
+        }
+    }
+
+    /**
+     * Requests currently available.
+     */
+    @Synchronized
+    fun availableRequests(): Long {
+        requests.refill(clock.millis())
+        return requests.available.toLong()
+    }
+
+    /**
+     * Tokens currently available.
+     */
+    @Synchronized
+    fun availableTokens(): Long {
+        tokens.refill(clock.millis())
+        return tokens.available.toLong()
+    }
+
+    companion object {
+        private const val MILLIS_PER_MINUTE = 60_000.0
+    }
+}
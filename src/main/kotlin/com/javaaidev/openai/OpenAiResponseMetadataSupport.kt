@@ -0,0 +1,148 @@
+package com.javaaidev.openai
+
+import com.openai.core.http.Headers
+import com.openai.models.completions.CompletionUsage
+import org.springframework.ai.chat.metadata.ChatResponseMetadata
+import org.springframework.ai.chat.metadata.DefaultUsage
+import org.springframework.ai.chat.metadata.RateLimit
+import org.springframework.ai.chat.metadata.Usage
+import org.springframework.ai.openai.metadata.OpenAiRateLimit
+import org.springframework.ai.openai.metadata.support.OpenAiApiResponseHeaders
+import java.time.Duration
+
+/**
+ * Builds Spring AI response metadata from OpenAI usage and `x-ratelimit-*` response headers.
+ */
+object OpenAiResponseMetadataSupport {
+    const val CACHED_TOKENS = "cachedTokens"
+    const val REASONING_TOKENS = "reasoningTokens"
+
+    /**
+     * Ratio of cached prompt tokens to prompt tokens, between 0 and 1.
+     */
+    const val CACHED_TOKENS_RATIO = "cachedTokensRatio"
+
+    private val durationPattern = Regex("(\\d+(?:\\.\\d+)?)(ms|h|m|s)")
+
+    fun buildResponseMetadata(
+        id: String,
+        model: String,
+        usage: CompletionUsage?,
+        rateLimit: RateLimit?
+    ): ChatResponseMetadata {
+        val builder = ChatResponseMetadata.builder().id(id).model(model)
+        usage?.let {
+            builder.usage(toUsage(it))
+            builder.keyValue(CACHED_TOKENS, cachedTokens(it))
+            builder.keyValue(CACHED_TOKENS_RATIO, cachedTokensRatio(it))
+            builder.keyValue(REASONING_TOKENS, reasoningTokens(it))
+        }
+        rateLimit?.let {
+            builder.rateLimit(it)
+        }
+        return builder.build()
+    }
+
+    /**
+     * Adds usage of earlier tool rounds in [previous] to the usage in [metadata]. Cached and reasoning
+     * tokens are summed too, and the cached tokens ratio is computed from the totals.
+     */
+    fun addUsage(metadata: ChatResponseMetadata, previous: ChatResponseMetadata): ChatResponseMetadata {
+        val current = metadata.usage
+        val promptTokens = (previous.usage.promptTokens ?: 0) + (current.promptTokens ?: 0)
+        val cachedTokens = longValue(previous, CACHED_TOKENS) + longValue(metadata, CACHED_TOKENS)
+        val builder = ChatResponseMetadata.builder()
+            .id(metadata.id)
+            .model(metadata.model)
+            .rateLimit(metadata.rateLimit)
+            .promptMetadata(metadata.promptMetadata)
+            .usage(
+                DefaultUsage(
+                    promptTokens,
+                    (previous.usage.completionTokens ?: 0) + (current.completionTokens ?: 0),
+                    (previous.usage.totalTokens ?: 0) + (current.totalTokens ?: 0),
+                    current.nativeUsage
+                )
+            )
+        metadata.entrySet().forEach { builder.keyValue(it.key, it.value) }
+        builder.keyValue(CACHED_TOKENS, cachedTokens)
+        builder.keyValue(CACHED_TOKENS_RATIO, if (promptTokens > 0) cachedTokens.toDouble() / promptTokens else 0.0)
+        builder.keyValue(REASONING_TOKENS, longValue(previous, REASONING_TOKENS) + longValue(metadata, REASONING_TOKENS))
+        return builder.build()
+    }
+
+    private fun longValue(metadata: ChatResponseMetadata, key: String): Long {
+        return (metadata.get<Any>(key) as? Number)?.toLong() ?: 0L
+    }
+
+    fun toUsage(usage: CompletionUsage): Usage {
+        return DefaultUsage(
+            usage.promptTokens().toInt(),
+            usage.completionTokens().toInt(),
+            usage.totalTokens().toInt(),
+            usage
+        )
+    }
+
+    fun cachedTokens(usage: CompletionUsage): Long {
+        return usage.promptTokensDetails().flatMap { it.cachedTokens() }.orElse(0L)
+    }
+
+    fun cachedTokensRatio(usage: CompletionUsage): Double {
+        val promptTokens = usage.promptTokens()
+        return if (promptTokens > 0) cachedTokens(usage).toDouble() / promptTokens else 0.0
+    }
+
+    fun reasoningTokens(usage: CompletionUsage): Long {
+        return usage.completionTokensDetails().flatMap { it.reasoningTokens() }.orElse(0L)
+    }
+
+    /**
+     * Returns `null` when the response carries no rate limit headers.
+     */
+    fun rateLimit(headers: Headers): RateLimit? {
+        val requestsLimit = headerAsLong(headers, OpenAiApiResponseHeaders.REQUESTS_LIMIT_HEADER)
+        val tokensLimit = headerAsLong(headers, OpenAiApiResponseHeaders.TOKENS_LIMIT_HEADER)
+        if (requestsLimit == null && tokensLimit == null) {
+            return null
+        }
+        return OpenAiRateLimit(
+            requestsLimit,
+            headerAsLong(headers, OpenAiApiResponseHeaders.REQUESTS_REMAINING_HEADER),
+            parseDuration(header(headers, OpenAiApiResponseHeaders.REQUESTS_RESET_HEADER)),
+            tokensLimit,
+            headerAsLong(headers, OpenAiApiResponseHeaders.TOKENS_REMAINING_HEADER),
+            parseDuration(header(headers, OpenAiApiResponseHeaders.TOKENS_RESET_HEADER)),
+        )
+    }
+
+    /**
+     * Parses durations in the format used by OpenAI reset headers, e.g. `20ms`, `1.5s` or `6m0s`.
+     */
+    fun parseDuration(value: String?): Duration? {
+        if (value.isNullOrBlank()) {
+            return null
+        }
+        var nanos = 0.0
+        var matched = false
+        durationPattern.findAll(value.trim()).forEach { match ->
+            matched = true
+            val amount = match.groupValues[1].toDouble()
+            nanos += amount * when (match.groupValues[2]) {
+                "h" -> 3_600_000_000_000.0
+                "m" -> 60_000_000_000.0
+                "s" -> 1_000_000_000.0
+                else -> 1_000_000.0
+            }
+        }
+        return if (matched) Duration.ofNanos(nanos.toLong()) else null
+    }
+
+    private fun header(headers: Headers, header: OpenAiApiResponseHeaders): String? {
+        return headers.values(header.getName()).firstOrNull()
+    }
+
+    private fun headerAsLong(headers: Headers, header: OpenAiApiResponseHeaders): Long? {
+        return header(headers, header)?.trim()?.toLongOrNull()
+    }
+}
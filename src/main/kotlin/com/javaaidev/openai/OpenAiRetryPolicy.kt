@@ -0,0 +1,241 @@
+package com.javaaidev.openai
+
+import com.openai.core.RequestOptions
+import com.openai.errors.OpenAIIoException
+import com.openai.errors.OpenAIServiceException
+import reactor.core.Disposable
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Scheduler
+import reactor.core.scheduler.Schedulers
+import reactor.util.retry.Retry
+import java.time.Duration
+import java.time.ZonedDateTime
+import java.time.format.DateTimeFormatter
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.Function
+
+/**
+ * Retries failed requests and optionally hedges slow ones.
+ *
+ * Requests failing with 429, 5xx or I/O errors are retried after the `Retry-After` delay when the server
+ * sends one, otherwise after a decorrelated jitter delay between [baseDelay] and three times the previous
+ * delay, capped by [maxDelay]. All attempts of a call share the [callTimeout] deadline, which is also sent
+ * as the timeout of each attempt.
+ *
+ * With [hedging], a non-streaming call that hasn't completed after the p95 latency of recent calls, or
+ * after [hedgeDelay] when set, sends a second request, and the first successful response wins. Streams
+ * are only retried when no chunk has been emitted yet.
+ *
+ * The SDK retries requests by itself, so its `maxRetries` should be set to 0 when using this policy.
+ */
+class OpenAiRetryPolicy @JvmOverloads constructor(
+    val maxAttempts: Int = DEFAULT_MAX_ATTEMPTS,
+    val baseDelay: Duration = DEFAULT_BASE_DELAY,
+    val maxDelay: Duration = DEFAULT_MAX_DELAY,
+    val callTimeout: Duration? = null,
+    val hedging: Boolean = false,
+    val hedgeDelay: Duration? = null,
+    private val scheduler: Scheduler = Schedulers.boundedElastic(),
+) {
+    init {
+        require(maxAttempts > 0) { "maxAttempts must be positive" }
+        require(!baseDelay.isNegative && !baseDelay.isZero) { "baseDelay must be positive" }
+        require(maxDelay >= baseDelay) { "maxDelay must not be less than baseDelay" }
+    }
+
+    private val latencies = LongArray(LATENCY_SAMPLES)
+    private var latencyCount = 0
+    private var nextLatency = 0
+    private val retries = AtomicLong()
+    private val hedges = AtomicLong()
+
+    /**
+     * Number of retried attempts.
+     */
+    val retryCount: Long
+        get() = retries.get()
+
+    /**
+     * Number of hedged requests sent.
+     */
+    val hedgeCount: Long
+        get() = hedges.get()
+
+    /**
+     * Runs [call] with the [RequestOptions] of each attempt. Only calls without side effects should
+     * set [hedge].
+     */
+    fun <T> execute(hedge: Boolean, call: Function<RequestOptions, T>): T {
+        val deadline = callTimeout?.let { System.nanoTime() + it.toNanos() }
+        var delay = baseDelay
+        var attempt = 1
+        while (true) {
+            val remaining = deadline?.let { Duration.ofNanos(it - System.nanoTime()) }
+            if (remaining != null && (remaining.isNegative || remaining.isZero)) {
+                throw IllegalStateException("Call not completed within $callTimeout")
+            }
+            val requestOptions = remaining?.let { RequestOptions.builder().timeout(it).build() }
+                ?: RequestOptions.none()
+            try {
+                val attemptCall = { call.apply(requestOptions) }
+                val threshold = if (hedge && hedging) hedgeThreshold() else null
+                return if (threshold != null) hedged(threshold, attemptCall) else timed(attemptCall)
+            } catch (e: RuntimeException) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e
+                }
+                delay = retryAfter(e) ?: nextDelay(delay)
+                if (deadline != null && System.nanoTime() + delay.toNanos() >= deadline) {
+                    throw e
+                }
+                retries.incrementAndGet()
+                attempt++
+                TimeUnit.NANOSECONDS.sleep(delay.toNanos())
+            }
+        }
+    }
+
+    /**
+     * Retries [chunks] on retryable errors before the first chunk is emitted.
+     */
+    fun <T : Any> retryStream(chunks: Flux<T>): Flux<T> {
+        return Flux.defer {
+            val emitted = AtomicBoolean(false)
+            var delay = baseDelay
+            chunks.doOnNext { emitted.set(true) }
+                .retryWhen(Retry.from { signals ->
+                    signals.concatMap { signal ->
+                        val error = signal.failure()
+                        if (emitted.get() || signal.totalRetries() + 1 >= maxAttempts || !isRetryable(error)) {
+                            Mono.error(error)
+                        } else {
+                            delay = retryAfter(error) ?: nextDelay(delay)
+                            retries.incrementAndGet()
+                            Mono.delay(delay, scheduler)
+                        }
+                    }
+                })
+        }
+    }
+
+    /**
+     * Returns the delay from `retry-after-ms` or `retry-after` headers, in seconds or as an HTTP date.
+     */
+    fun retryAfter(error: Throwable): Duration? {
+        if (error !is OpenAIServiceException) {
+            return null
+        }
+        val headers = error.headers()
+        headers.values("retry-after-ms").firstOrNull()?.trim()?.toDoubleOrNull()?.let {
+            return Duration.ofNanos((it * 1_000_000).toLong()).coerceIn(Duration.ZERO, maxDelay)
+        }
+        val retryAfter = headers.values("retry-after").firstOrNull()?.trim() ?: return null
+        val delay = retryAfter.toDoubleOrNull()?.let { Duration.ofNanos((it * 1_000_000_000).toLong()) }
+            ?: runCatching {
+                Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME))
+            }.getOrNull()
+            ?: return null
+        return delay.coerceIn(Duration.ZERO, maxDelay)
+    }
+
+    /**
+     * Decorrelated jitter: a random delay between [baseDelay] and three times the [previous] delay.
+     */
+    internal fun nextDelay(previous: Duration): Duration {
+        val upper = (previous.toNanos() * 3).coerceAtLeast(baseDelay.toNanos() + 1)
+        val delay = ThreadLocalRandom.current().nextLong(baseDelay.toNanos(), upper)
+        return Duration.ofNanos(delay.coerceAtMost(maxDelay.toNanos()))
+    }
+
+    /**
+     * Returns [hedgeDelay] when set, otherwise the p95 latency once enough calls are recorded.
+     */
+    @Synchronized
+    fun hedgeThreshold(): Duration? {
+        hedgeDelay?.let { return it }
+        if (latencyCount < MIN_LATENCY_SAMPLES) {
+            return null
+        }
+        val samples = latencies.copyOf(latencyCount)
+        samples.sort()
+        return Duration.ofNanos(samples[((samples.size - 1) * 0.95).toInt()])
+    }
+
+    @Synchronized
+    private fun recordLatency(nanos: Long) {
+        latencies[nextLatency] = nanos
+        nextLatency = (nextLatency + 1) % LATENCY_SAMPLES
+        latencyCount = (latencyCount + 1).coerceAtMost(LATENCY_SAMPLES)
+    }
+
+    private fun <T> timed(call: () -> T): T {
+        val start = System.nanoTime()
+        return call().also { recordLatency(System.nanoTime() - start) }
+    }
+
+    /**
+     * Sends a second request when the first hasn't completed after [threshold]. The call fails only
+     * when all sent requests fail.
+     */
+    private fun <T> hedged(threshold: Duration, call: () -> T): T {
+        val result = CompletableFuture<T>()
+        val sent = AtomicInteger(1)
+        val failed = AtomicInteger()
+        val tasks = mutableListOf<Disposable>()
+        val send = {
+            scheduler.schedule {
+                try {
+                    result.complete(timed(call))
+                } catch (e: Throwable) {
+                    if (failed.incrementAndGet() >= sent.get()) {
+                        result.completeExceptionally(e)
+                    }
+                }
+            }
+        }
+        synchronized(tasks) {
+            tasks.add(send())
+            tasks.add(scheduler.schedule({
+                if (!result.isDone) {
+                    sent.incrementAndGet()
+                    hedges.incrementAndGet()
+                    synchronized(tasks) { tasks.add(send()) }
+                }
+            }, threshold.toNanos(), TimeUnit.NANOSECONDS))
+        }
+        try {
+            return result.join()
+        } catch (e: CompletionException) {
+            throw e.cause as? RuntimeException ?: e.cause as? Error ?: IllegalStateException(e.cause)
+        } finally {
+            synchronized(tasks) { tasks.forEach { it.dispose() } }
+        }
+    }
+
+    companion object {
+        /**
+         * Returns `true` for errors that may succeed when sent again: 429, 5xx and I/O errors.
+         */
+        @JvmStatic
+        fun isRetryable(error: Throwable): Boolean {
+            return when (error) {
+                is OpenAIServiceException -> error.statusCode() == 429 || error.statusCode() >= 500
+                is OpenAIIoException -> true
+                else -> false
+            }
+        }
+
+        const val DEFAULT_MAX_ATTEMPTS = 3
+        val DEFAULT_BASE_DELAY: Duration = Duration.ofMillis(500)
+        val DEFAULT_MAX_DELAY: Duration = Duration.ofSeconds(30)
+        private const val LATENCY_SAMPLES = 100
+        private const val MIN_LATENCY_SAMPLES = 20
+    }
+}
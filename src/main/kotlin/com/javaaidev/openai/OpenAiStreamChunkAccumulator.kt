@@ -0,0 +1,132 @@
+package com.javaaidev.openai
+
+import com.openai.models.chat.completions.ChatCompletionChunk
+import com.openai.models.chat.completions.ChatCompletionChunk.Choice
+import com.openai.models.chat.completions.ChatCompletionChunk.Choice.Delta
+import com.openai.models.chat.completions.ChatCompletionChunk.Choice.Delta.ToolCall
+import com.openai.models.chat.completions.ChatCompletionChunk.Choice.Delta.ToolCall.Function
+import com.openai.models.chat.completions.ChatCompletionChunk.Choice.FinishReason
+import com.openai.models.chat.completions.ChatCompletionChunk.Choice.Logprobs
+import com.openai.models.completions.CompletionUsage
+import java.util.*
+
+/**
+ * Mutable accumulator of streamed [ChatCompletionChunk]s.
+ *
+ * Text and tool call arguments are appended to growing buffers, one per choice and one per tool call index,
+ * and the immutable [ChatCompletionChunk] is only built once in [build]. Merging N fragments is linear
+ * in the total size of the fragments.
+ */
+class OpenAiStreamChunkAccumulator {
+    private var last: ChatCompletionChunk? = null
+    private var count = 0
+    private var serviceTier: Optional<ChatCompletionChunk.ServiceTier> = Optional.empty()
+    private var usage: CompletionUsage? = null
+    private val choices = TreeMap<Long, ChoiceBuffer>()
+
+    fun add(chunk: ChatCompletionChunk): OpenAiStreamChunkAccumulator {
+        last = chunk
+        count++
+        chunk.serviceTier().ifPresent { serviceTier = Optional.of(it) }
+        chunk.usage().ifPresent { usage = it }
+        chunk.choices().forEach { choice ->
+            choices.getOrPut(choice.index()) { ChoiceBuffer(choice.index()) }.add(choice)
+        }
+        return this
+    }
+
+    fun isEmpty() = count == 0
+
+    fun build(): ChatCompletionChunk {
+        val current = last ?: return EMPTY_CHUNK
+        if (count == 1) {
+            return current
+        }
+        val builder = ChatCompletionChunk.builder()
+            .id(current.id())
+            .choices(choices.values.map { it.build() })
+            .created(current.created())
+            .model(current.model())
+            .serviceTier(serviceTier)
+        usage?.let { builder.usage(it) }
+        return builder.build()
+    }
+
+    private class ChoiceBuffer(private val index: Long) {
+        private var role: Delta.Role? = null
+        private var content: StringBuilder? = null
+        private var refusal: StringBuilder? = null
+        private var finishReason: Optional<FinishReason> = Optional.empty()
+        private var logprobs: Optional<Logprobs> = Optional.empty()
+        private val toolCalls = TreeMap<Long, ToolCallBuffer>()
+
+        fun add(choice: Choice) {
+            val delta = choice.delta()
+            delta.role().ifPresent { role = it }
+            delta.content().ifPresent {
+                content = (content ?: StringBuilder()).append(it)
+            }
+            delta.refusal().ifPresent {
+                refusal = (refusal ?: StringBuilder()).append(it)
+            }
+            delta.toolCalls().ifPresent { calls ->
+                calls.forEach { toolCall ->
+                    toolCalls.getOrPut(toolCall.index()) { ToolCallBuffer(toolCall.index()) }.add(toolCall)
+                }
+            }
+            choice.finishReason().ifPresent { finishReason = Optional.of(it) }
+            choice.logprobs().ifPresent { logprobs = Optional.of(it) }
+        }
+
+        fun build(): Choice {
+            val deltaBuilder = Delta.builder()
+                .role(role ?: Delta.Role.ASSISTANT)
+                .content(content?.toString() ?: "")
+            refusal?.let { deltaBuilder.refusal(it.toString()) }
+            if (toolCalls.isNotEmpty()) {
+                deltaBuilder.toolCalls(toolCalls.values.map { it.build() })
+            }
+            return Choice.builder()
+                .delta(deltaBuilder.build())
+                .finishReason(finishReason)
+                .index(index)
+                .logprobs(logprobs)
+                .build()
+        }
+    }
+
+    private class ToolCallBuffer(private val index: Long) {
+        private var id: String? = null
+        private var type: ToolCall.Type? = null
+        private var name: String? = null
+        private val arguments = StringBuilder()
+
+        fun add(toolCall: ToolCall) {
+            toolCall.id().ifPresent { id = it }
+            toolCall.type().ifPresent { type = it }
+            toolCall.function().ifPresent { function ->
+                function.name().ifPresent { name = it }
+                function.arguments().ifPresent { arguments.append(it) }
+            }
+        }
+
+        fun build(): ToolCall {
+            val builder = ToolCall.builder()
+                .index(index)
+                .type(type ?: ToolCall.Type.FUNCTION)
+                .function(
+                    Function.builder()
+                        .name(name ?: "")
+                        .arguments(arguments.toString())
+                        .build()
+                )
+            id?.let { builder.id(it) }
+            return builder.build()
+        }
+    }
+
+    companion object {
+        private val EMPTY_CHUNK: ChatCompletionChunk =
+            ChatCompletionChunk.builder().id("").choices(listOf()).created(0).model("").build()
+    }
+}
@@ -46,35 +46,14 @@ class OpenAiStreamFunctionCallingHelper {
         val content = current.content().or { previous.content() }.orElse("")
         val role = current.role().or { previous.role() }.orElse(Delta.Role.ASSISTANT)
         val refusal = current.refusal().or { previous.refusal() }.orElse("")
-        val toolCalls = mutableListOf<ToolCall>()
-        var lastPreviousToolCall: ToolCall? = null
-        if (previous.toolCalls().isPresent) {
-            val previousToolCalls = previous.toolCalls().get()
-            lastPreviousToolCall = previousToolCalls.last()
-            if (previousToolCalls.size > 1) {
-                toolCalls.addAll(previousToolCalls.subList(0, previousToolCalls.size - 1))
-            }
+        val toolCalls = LinkedHashMap<Long, ToolCall>()
+        previous.toolCalls().ifPresent { calls ->
+            calls.forEach { toolCalls[it.index()] = it }
         }
-        if (current.toolCalls().isPresent) {
-            val currentToolCalls = current.toolCalls().get()
-            if (currentToolCalls.size > 1) {
-                throw IllegalStateException("Currently only one tool call is supported per message!")
-            }
-            val currentToolCall = currentToolCalls.first()
-            if (currentToolCall.id().isPresent) {
-                if (lastPreviousToolCall != null) {
-                    toolCalls.add(lastPreviousToolCall)
-                }
-                toolCalls.add(currentToolCall)
-            } else {
-                toolCalls.add(merge(lastPreviousToolCall, currentToolCall))
-            }
-        } else {
-            if (lastPreviousToolCall != null) {
-                toolCalls.add(lastPreviousToolCall)
-            }
+        current.toolCalls().ifPresent { calls ->
+            calls.forEach { toolCalls[it.index()] = merge(toolCalls[it.index()], it) }
         }
-        return Delta.builder().content(content).role(role).refusal(refusal).toolCalls(toolCalls).build()
+        return Delta.builder().content(content).role(role).refusal(refusal).toolCalls(toolCalls.values.toList()).build()
     }
 
     private fun merge(previous: ToolCall?, current: ToolCall): ToolCall {
@@ -83,8 +62,11 @@ class OpenAiStreamFunctionCallingHelper {
         }
         val id = current.id().or { previous.id() }.orElse("")
         val type = current.type().or { previous.type() }.orElse(ToolCall.Type.FUNCTION)
-        val function = merge(previous.function().orElse(null), current.function().get())
-        return ToolCall.builder().id(id).type(type).index(current.index()).function(function).build()
+        val function = current.function().map { merge(previous.function().orElse(null), it) }
+            .or { previous.function() }
+        val builder = ToolCall.builder().id(id).type(type).index(current.index())
+        function.ifPresent { builder.function(it) }
+        return builder.build()
     }
 
     private fun merge(previous: Function?, current: Function): Function {
@@ -0,0 +1,120 @@
+package com.javaaidev.openai
+
+import org.springframework.ai.chat.messages.AssistantMessage
+import org.springframework.ai.chat.messages.Message
+import org.springframework.ai.chat.messages.ToolResponseMessage
+import org.springframework.ai.chat.model.ChatResponse
+import org.springframework.ai.chat.model.Generation
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.model.tool.ToolCallingManager
+import org.springframework.ai.model.tool.ToolExecutionResult
+import java.time.Duration
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Executes independent tool calls of a single assistant message concurrently.
+ *
+ * Each tool call is delegated to the [ToolCallingManager] on its own, so tool resolution, tool context and
+ * exception processing stay the same as sequential execution. Tool response messages are kept in the
+ * order of the original tool calls. When a tool call fails or the timeout elapses, the other tool calls are
+ * cancelled and their threads interrupted.
+ */
+class ParallelToolCallExecutor(
+    private val toolCallingManager: ToolCallingManager,
+    executor: Executor? = null,
+) {
+    private val executor = executor ?: defaultExecutor()
+
+    fun executeToolCalls(prompt: Prompt, chatResponse: ChatResponse, timeout: Duration?): ToolExecutionResult {
+        val generation = chatResponse.results.firstOrNull { it.output.hasToolCalls() }
+            ?: throw IllegalStateException("No tool call requested by the chat model")
+        val assistantMessage = generation.output
+        if (assistantMessage.toolCalls.size < 2) {
+            return toolCallingManager.executeToolCalls(prompt, chatResponse)
+        }
+        val completionService = ExecutorCompletionService<ToolExecutionResult>(executor)
+        val futures = assistantMessage.toolCalls.map { toolCall ->
+            val singleToolCallResponse = ChatResponse.builder()
+                .from(chatResponse)
+                .generations(
+                    listOf(
+                        Generation(
+                            AssistantMessage(assistantMessage.text, assistantMessage.metadata, listOf(toolCall)),
+                            generation.metadata
+                        )
+                    )
+                )
+                .build()
+            completionService.submit {
+                toolCallingManager.executeToolCalls(prompt, singleToolCallResponse)
+            }
+        }
+        val results = awaitAll(completionService, futures, timeout)
+        val toolResponses = results.flatMap { result ->
+            (result.conversationHistory().lastOrNull() as? ToolResponseMessage)?.responses ?: listOf()
+        }
+        val conversationHistory = ArrayList<Message>(prompt.instructions)
+        conversationHistory.add(assistantMessage)
+        conversationHistory.add(ToolResponseMessage(toolResponses, mapOf()))
+        return ToolExecutionResult.builder()
+            .conversationHistory(conversationHistory)
+            .returnDirect(results.all { it.returnDirect() })
+            .build()
+    }
+
+    /**
+     * Waits for the tool calls in completion order, so a failure cancels the others without waiting for
+     * the tool calls submitted before it.
+     */
+    private fun awaitAll(
+        completionService: CompletionService<ToolExecutionResult>,
+        futures: List<Future<ToolExecutionResult>>,
+        timeout: Duration?
+    ): List<ToolExecutionResult> {
+        val deadline = timeout?.let { System.nanoTime() + it.toNanos() }
+        try {
+            repeat(futures.size) {
+                val completed = if (deadline != null) {
+                    completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+                        ?: throw TimeoutException()
+                } else {
+                    completionService.take()
+                }
+                completed.get()
+            }
+        } catch (e: TimeoutException) {
+            futures.forEach { it.cancel(true) }
+            throw IllegalStateException("Tool execution did not complete within $timeout", e)
+        } catch (e: InterruptedException) {
+            futures.forEach { it.cancel(true) }
+            Thread.currentThread().interrupt()
+            throw IllegalStateException("Tool execution was interrupted", e)
+        } catch (e: ExecutionException) {
+            futures.forEach { it.cancel(true) }
+            val cause = e.cause
+            throw if (cause is RuntimeException) cause else IllegalStateException("Tool execution failed", cause)
+        }
+        return futures.map { it.get() }
+    }
+
+    companion object {
+        private val threadCounter = AtomicInteger()
+
+        /**
+         * Uses virtual threads when running on Java 21+, otherwise a cached pool of daemon threads.
+         */
+        fun defaultExecutor(): ExecutorService {
+            return try {
+                Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null) as ExecutorService
+            } catch (e: ReflectiveOperationException) {
+                Executors.newCachedThreadPool { runnable ->
+                    Thread(runnable, "openai-tool-execution-${threadCounter.incrementAndGet()}").apply {
+                        isDaemon = true
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.javaaidev.openai
+
+import java.util.*
+
+/**
+ * Canonical forms of tool schemas and system messages, so requests with the same content share a
+ * byte-identical prompt prefix and hit the provider-side prompt cache.
+ */
+object PromptCanonicalizer {
+
+    /**
+     * Sorts keys of maps recursively. Lists keep their order.
+     */
+    @JvmStatic
+    fun sortKeys(value: Any?): Any? {
+        return when (value) {
+            is Map<*, *> -> TreeMap<String, Any?>().also { sorted ->
+                value.forEach { (key, item) -> sorted[key.toString()] = sortKeys(item) }
+            }
+
+            is List<*> -> value.map { sortKeys(it) }
+            else -> value
+        }
+    }
+
+    /**
+     * Normalizes line endings to `\n` and removes trailing whitespace of each line and of the text.
+     */
+    @JvmStatic
+    fun normalizeText(text: String): String {
+        return text.lineSequence().joinToString("\n") { it.trimEnd() }.trimEnd()
+    }
+}
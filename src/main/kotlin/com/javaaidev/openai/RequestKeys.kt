@@ -0,0 +1,41 @@
+package com.javaaidev.openai
+
+import com.fasterxml.jackson.databind.MapperFeature
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.openai.core.http.Headers
+import com.openai.core.jsonMapper
+import com.openai.models.chat.completions.ChatCompletionCreateParams
+import com.openai.models.embeddings.EmbeddingCreateParams
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+
+/**
+ * Content-addressed keys of requests: SHA-256 of the request body serialized with sorted properties and map
+ * keys, and of the additional headers.
+ */
+object RequestKeys {
+    private val mapper = jsonMapper().rebuild()
+        .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+        .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+        .build()
+
+    @JvmStatic
+    fun of(params: ChatCompletionCreateParams): String = of(params._body(), params._headers())
+
+    @JvmStatic
+    fun of(params: EmbeddingCreateParams): String = of(params._body(), params._headers())
+
+    private fun of(body: Any, headers: Headers): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(mapper.writeValueAsBytes(body))
+        headers.names().sorted().forEach { name ->
+            digest.update(0)
+            digest.update(name.lowercase().toByteArray(StandardCharsets.UTF_8))
+            headers.values(name).forEach {
+                digest.update(1)
+                digest.update(it.toByteArray(StandardCharsets.UTF_8))
+            }
+        }
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+}
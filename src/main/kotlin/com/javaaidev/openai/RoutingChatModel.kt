@@ -0,0 +1,107 @@
+package com.javaaidev.openai
+
+import com.openai.client.OpenAIClient
+import org.springframework.ai.chat.model.ChatModel
+import org.springframework.ai.chat.model.ChatResponse
+import org.springframework.ai.chat.model.ToolContext
+import org.springframework.ai.chat.prompt.ChatOptions
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.model.tool.ToolCallingChatOptions
+import org.springframework.ai.tool.ToolCallback
+import org.springframework.ai.tool.definition.ToolDefinition
+import org.springframework.ai.tool.metadata.ToolMetadata
+import reactor.core.publisher.Flux
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Routes calls across [chatModels] serving the same model, e.g. deployments in different regions or
+ * OpenAI-compatible servers, with failover and a circuit breaker per endpoint. See [EndpointRouter].
+ *
+ * Calls only fail over before a tool has been executed. Tools have side effects, and a failed later round
+ * would otherwise run the whole tool loop again on another endpoint. This covers tools of the prompt and
+ * of the default options of each endpoint.
+ */
+class RoutingChatModel(private val router: EndpointRouter<ChatModel>) : ChatModel {
+
+    @JvmOverloads
+    constructor(
+        chatModels: List<ChatModel>,
+        strategy: RoutingStrategy = RoutingStrategy.LEAST_OUTSTANDING_REQUESTS,
+    ) : this(EndpointRouter(chatModels, strategy))
+
+    override fun call(prompt: Prompt): ChatResponse {
+        val toolExecuted = AtomicBoolean(false)
+        return router.execute({ !toolExecuted.get() }) { it.call(trackToolExecution(prompt, it, toolExecuted)) }
+    }
+
+    override fun stream(prompt: Prompt): Flux<ChatResponse> {
+        return Flux.defer {
+            val toolExecuted = AtomicBoolean(false)
+            router.stream({ !toolExecuted.get() }) { it.stream(trackToolExecution(prompt, it, toolExecuted)) }
+        }
+    }
+
+    override fun getDefaultOptions(): ChatOptions {
+        return router.endpoint(0).defaultOptions
+    }
+
+    /**
+     * Wraps the tool callbacks used for [prompt] on [chatModel] to set [toolExecuted] when a tool runs, so a
+     * failure in a later tool round doesn't replay the conversation, and its tools, on another endpoint.
+     * Default tool callbacks of [chatModel] are used when the prompt has none, following the
+     * [ToolCallingChatOptions] merge rules, so they are passed with the prompt once wrapped. Tools resolved
+     * by name can't be tracked, so calls with them never fail over.
+     */
+    private fun trackToolExecution(prompt: Prompt, chatModel: ChatModel, toolExecuted: AtomicBoolean): Prompt {
+        val defaultOptions = chatModel.defaultOptions as? ToolCallingChatOptions
+        val options = prompt.options?.let { it as? ToolCallingChatOptions ?: OpenAiChatOptions.fromChatOptions(it) }
+        if ((options?.internalToolExecutionEnabled ?: defaultOptions?.internalToolExecutionEnabled) == false) {
+            return prompt
+        }
+        val toolNames = options?.toolNames.takeUnless { it.isNullOrEmpty() } ?: defaultOptions?.toolNames
+        if (!toolNames.isNullOrEmpty()) {
+            toolExecuted.set(true)
+        }
+        val toolCallbacks = options?.toolCallbacks.takeUnless { it.isNullOrEmpty() } ?: defaultOptions?.toolCallbacks
+        if (toolCallbacks.isNullOrEmpty()) {
+            return prompt
+        }
+        val trackedOptions = options?.copy<ToolCallingChatOptions>() ?: OpenAiChatOptions.builder().build()
+        trackedOptions.toolCallbacks = toolCallbacks.map { TrackingToolCallback(it, toolExecuted) }
+        return Prompt(prompt.instructions, trackedOptions)
+    }
+
+    private class TrackingToolCallback(
+        private val delegate: ToolCallback,
+        private val toolExecuted: AtomicBoolean,
+    ) : ToolCallback {
+        override fun getToolDefinition(): ToolDefinition = delegate.toolDefinition
+
+        override fun getToolMetadata(): ToolMetadata = delegate.toolMetadata
+
+        override fun call(toolInput: String): String {
+            toolExecuted.set(true)
+            return delegate.call(toolInput)
+        }
+
+        override fun call(toolInput: String, toolContext: ToolContext?): String {
+            toolExecuted.set(true)
+            return delegate.call(toolInput, toolContext)
+        }
+    }
+
+    companion object {
+        /**
+         * Creates an [OpenAIChatModel] with [options] for each of [clients].
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun of(
+            clients: List<OpenAIClient>,
+            options: OpenAiChatOptions? = null,
+            strategy: RoutingStrategy = RoutingStrategy.LEAST_OUTSTANDING_REQUESTS,
+        ): RoutingChatModel {
+            return RoutingChatModel(clients.map { OpenAIChatModel(it, options = options) }, strategy)
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.javaaidev.openai
+
+import com.openai.client.OpenAIClient
+import org.springframework.ai.document.Document
+import org.springframework.ai.embedding.EmbeddingModel
+import org.springframework.ai.embedding.EmbeddingRequest
+import org.springframework.ai.embedding.EmbeddingResponse
+
+/**
+ * Routes calls across [embeddingModels] serving the same model, with failover and a circuit breaker per
+ * endpoint. See [EndpointRouter].
+ */
+class RoutingEmbeddingModel(private val router: EndpointRouter<EmbeddingModel>) : EmbeddingModel {
+
+    @JvmOverloads
+    constructor(
+        embeddingModels: List<EmbeddingModel>,
+        strategy: RoutingStrategy = RoutingStrategy.LEAST_OUTSTANDING_REQUESTS,
+    ) : this(EndpointRouter(embeddingModels, strategy))
+
+    override fun call(request: EmbeddingRequest): EmbeddingResponse {
+        return router.execute { it.call(request) }
+    }
+
+    override fun embed(text: String): FloatArray {
+        return router.execute { it.embed(text) }
+    }
+
+    override fun embed(document: Document): FloatArray {
+        return router.execute { it.embed(document) }
+    }
+
+    override fun dimensions(): Int {
+        return router.endpoint(0).dimensions()
+    }
+
+    companion object {
+        /**
+         * Creates an [OpenAIEmbeddingModel] with [options] for each of [clients].
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun of(
+            clients: List<OpenAIClient>,
+            options: OpenAIEmbeddingOptions? = null,
+            strategy: RoutingStrategy = RoutingStrategy.LEAST_OUTSTANDING_REQUESTS,
+        ): RoutingEmbeddingModel {
+            return RoutingEmbeddingModel(clients.map { OpenAIEmbeddingModel(it, options) }, strategy)
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.javaaidev.openai
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.Supplier
+
+/**
+ * Coalesces concurrent calls with the same key. The first caller executes the call, and callers arriving
+ * while it's in flight share its result or failure.
+ */
+class SingleFlight {
+    private val inFlight = ConcurrentHashMap<String, CompletableFuture<Any?>>()
+    private val executed = AtomicLong()
+    private val coalesced = AtomicLong()
+
+    /**
+     * Number of calls executed.
+     */
+    val executedCount: Long
+        get() = executed.get()
+
+    /**
+     * Number of calls that shared the result of an in-flight call.
+     */
+    val coalescedCount: Long
+        get() = coalesced.get()
+
+    fun <T> execute(key: String, call: Supplier<T>): T {
+        val future = CompletableFuture<Any?>()
+        val existing = inFlight.putIfAbsent(key, future)
+        if (existing != null) {
+            coalesced.incrementAndGet()
+            try {
+                @Suppress("UNCHECKED_CAST")
+                return existing.join() as T
+            } catch (e: CompletionException) {
+                throw e.cause as? RuntimeException ?: e.cause as? Error ?: IllegalStateException(e.cause)
+            }
+        }
+        executed.incrementAndGet()
+        try {
+            val result = call.get()
+            future.complete(result)
+            return result
+        } catch (e: Throwable) {
+            future.completeExceptionally(e)
+            throw e
+        } finally {
+            inFlight.remove(key, future)
+        }
+    }
+}
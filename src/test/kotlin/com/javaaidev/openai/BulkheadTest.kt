@@ -0,0 +1,133 @@
+package com.javaaidev.openai
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class BulkheadTest {
+
+    @Test
+    @DisplayName("Calls over the limit fail fast")
+    fun testFailFast() {
+        val bulkhead = Bulkhead(2, 1, 10)
+        val first = bulkhead.acquire("tenant-a")
+        bulkhead.acquire("tenant-a")
+        val exception = assertFailsWith<BulkheadFullException> { bulkhead.acquire("tenant-a") }
+        assertEquals("tenant-a", exception.key)
+        assertEquals(1, bulkhead.rejectedCount)
+        bulkhead.acquire("tenant-b")
+        first.release()
+        bulkhead.acquire("tenant-a")
+    }
+
+    @Test
+    @DisplayName("Queued call gets a released permit")
+    fun testQueue() {
+        val bulkhead = Bulkhead(1, 1, 10, 1, Duration.ofSeconds(5))
+        val permit = bulkhead.acquire("key")
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            val queued = executor.submit(Callable { bulkhead.acquire("key") })
+            while (bulkhead.stats("key")?.queueDepth != 1) {
+                Thread.sleep(5)
+            }
+            assertFailsWith<BulkheadFullException> { bulkhead.acquire("key") }
+            permit.abandon()
+            queued.get(5, TimeUnit.SECONDS)
+            assertEquals(0, bulkhead.stats("key")?.queueDepth)
+            assertEquals(1, bulkhead.stats("key")?.inFlight)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    @DisplayName("Limit grows with fast calls and backs off on slow calls")
+    fun testAdaptiveLimit() {
+        val bulkhead = Bulkhead(4, 1, 10, latencyThreshold = Duration.ofMillis(50))
+        val permits = (1..4).map { bulkhead.acquire("key") }
+        permits.forEach { it.release() }
+        assertTrue(bulkhead.stats("key")!!.limit > 4)
+
+        val limit = bulkhead.stats("key")!!.limit
+        bulkhead.acquire("key").release(failed = true)
+        assertTrue(bulkhead.stats("key")!!.limit < limit)
+    }
+
+    @Test
+    @DisplayName("Idle keys are evicted")
+    fun testEvictIdle() {
+        var now = Instant.parse("2025-01-01T00:00:00Z")
+        val clock = object : Clock() {
+            override fun getZone() = ZoneOffset.UTC
+            override fun withZone(zone: ZoneId?) = this
+            override fun instant() = now
+        }
+        val bulkhead = Bulkhead(2, 1, 10, idleTimeout = Duration.ofMinutes(1), clock = clock)
+        bulkhead.acquire("idle").release()
+        val busy = bulkhead.acquire("busy")
+        now = now.plus(Duration.ofMinutes(2))
+        bulkhead.acquire("other").release()
+        assertNull(bulkhead.stats("idle"))
+        assertEquals(1, bulkhead.stats("busy")?.inFlight)
+        busy.release()
+        assertEquals(setOf("busy", "other"), bulkhead.stats().keys)
+    }
+
+    @Test
+    @DisplayName("Stats are registered as gauges")
+    fun testMetrics() {
+        val registry = SimpleMeterRegistry()
+        val bulkhead = Bulkhead(1, 1, 10, name = "tenants", meterRegistry = registry)
+        val permit = bulkhead.acquire("tenant-a")
+        assertFailsWith<BulkheadFullException> { bulkhead.acquire("tenant-a") }
+        val inFlight = registry.get("openai.bulkhead.in.flight").tags("bulkhead", "tenants", "key", "tenant-a")
+        assertEquals(1.0, inFlight.gauge().value())
+        assertEquals(
+            0.0,
+            registry.get("openai.bulkhead.queue.depth").tags("key", "tenant-a").gauge().value()
+        )
+        assertEquals(1.0, registry.get("openai.bulkhead.rejected").functionCounter().count())
+        permit.release()
+        assertEquals(0.0, inFlight.gauge().value())
+    }
+
+    @Test
+    @DisplayName("Chat calls of a tenant are limited")
+    fun testChatModel() {
+        MockOpenAIServer {
+            MockOpenAIServer.Response(MockOpenAIServer.completion("Hello"), delay = Duration.ofMillis(500))
+        }.use { server ->
+            val tenantBulkhead = Bulkhead(1, 1, 1)
+            val chatModel = OpenAIChatModel(server.client(), tenantBulkhead = tenantBulkhead)
+            val options = OpenAiChatOptions.builder().model("gpt-4o-mini").user("tenant-a").build()
+            val executor = Executors.newSingleThreadExecutor()
+            try {
+                val first = executor.submit(Callable { chatModel.call(Prompt("hello", options)) })
+                while (tenantBulkhead.stats("tenant-a")?.inFlight != 1) {
+                    Thread.sleep(5)
+                }
+                assertFailsWith<BulkheadFullException> { chatModel.call(Prompt("hello", options)) }
+                val other = OpenAiChatOptions.builder().model("gpt-4o-mini").user("tenant-b").build()
+                assertEquals("Hello", chatModel.call(Prompt("hello", other)).result.output.text)
+                assertEquals("Hello", first.get(5, TimeUnit.SECONDS).result.output.text)
+                assertEquals(0, tenantBulkhead.stats("tenant-a")?.inFlight)
+            } finally {
+                executor.shutdownNow()
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.tool.function.FunctionToolCallback
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class CachingChatModelTest {
+    private val text = "Positive. The review praises the battery life and the screen."
+    private val server = MockOpenAIServer { MockOpenAIServer.Response(MockOpenAIServer.completion(text)) }
+    private val client = server.client()
+    private val chatModel = CachingChatModel(OpenAIChatModel(client), InMemoryChatResponseCache())
+
+    @AfterEach
+    fun tearDown() {
+        client.close()
+        server.close()
+    }
+
+    private fun prompt(temperature: Double? = null, seed: Int? = null): Prompt {
+        return Prompt(
+            "classify: great battery, great screen",
+            OpenAiChatOptions.builder().model("gpt-4o-mini").temperature(temperature).seed(seed).build()
+        )
+    }
+
+    @Test
+    @DisplayName("Deterministic requests are cached")
+    fun testCached() {
+        val first = chatModel.call(prompt(temperature = 0.0))
+        val second = chatModel.call(prompt(temperature = 0.0))
+        assertSame(first, second)
+        chatModel.call(prompt(seed = 42))
+        assertEquals(2, server.requestCount)
+        assertEquals(1, chatModel.hitCount)
+        assertEquals(2, chatModel.missCount)
+    }
+
+    @Test
+    @DisplayName("Non-deterministic requests are not cached")
+    fun testNotCached() {
+        chatModel.call(prompt(temperature = 0.7))
+        chatModel.call(prompt(temperature = 0.7))
+        assertEquals(2, server.requestCount)
+    }
+
+    @Test
+    @DisplayName("Cached response is replayed as chunks")
+    fun testReplay() {
+        chatModel.call(prompt(temperature = 0.0))
+        val chunks = chatModel.stream(prompt(temperature = 0.0)).collectList().block(Duration.ofSeconds(10))!!
+        assertEquals(1, server.requestCount)
+        assertEquals(2, chunks.size)
+        assertEquals(text, chunks.joinToString("") { it.result.output.text })
+        assertEquals("STOP", chunks.last().result.metadata.finishReason)
+        assertEquals(15, chunks.last().metadata.usage.totalTokens)
+    }
+
+    @Test
+    @DisplayName("Entries expire after TTL")
+    fun testTtl() {
+        var now = Instant.parse("2025-01-01T00:00:00Z")
+        val clock = object : Clock() {
+            override fun getZone() = ZoneOffset.UTC
+            override fun withZone(zone: ZoneId?) = this
+            override fun instant() = now
+        }
+        val cache = InMemoryChatResponseCache(10, Duration.ofMinutes(5), clock)
+        val response = chatModel.call(prompt(temperature = 0.0))
+        cache.put("key", response)
+        assertSame(response, cache.get("key"))
+        now = now.plus(Duration.ofMinutes(6))
+        assertNull(cache.get("key"))
+    }
+
+    @Test
+    @DisplayName("Responses with tool calls are never cached")
+    fun testToolCallsNotCached() {
+        MockOpenAIServer { request ->
+            if (request.body.contains("\"stream\":true")) {
+                MockOpenAIServer.Response(toolCallStream(), headers = mapOf("Content-Type" to "text/event-stream"))
+            } else {
+                MockOpenAIServer.Response(MockOpenAIServer.toolCall("toUppercase", "{\"input\":\"hello\"}"))
+            }
+        }.use { toolServer ->
+            val toolChatModel = CachingChatModel(OpenAIChatModel(toolServer.client()), InMemoryChatResponseCache())
+            val options = OpenAiChatOptions.builder()
+                .model("gpt-4o-mini")
+                .temperature(0.0)
+                .toolCallbacks(
+                    FunctionToolCallback.builder("toUppercase", OpenAIChatModelToolLoopTest.ToUppercase())
+                        .description("Convert a string to uppercase")
+                        .inputType(OpenAIChatModelToolLoopTest.ToUppercaseRequest::class.java)
+                        .build()
+                )
+                .internalToolExecutionEnabled(false)
+                .build()
+            val prompt = Prompt("uppercase of hello", options)
+
+            repeat(2) {
+                assertTrue(toolChatModel.call(prompt).result.output.hasToolCalls())
+            }
+            assertEquals(2, toolServer.requestCount)
+
+            repeat(2) {
+                val chunks = toolChatModel.stream(prompt).collectList().block(Duration.ofSeconds(10))!!
+                assertTrue(chunks.any { it.result?.output?.hasToolCalls() == true })
+            }
+            assertEquals(4, toolServer.requestCount)
+            assertEquals(0, toolChatModel.hitCount)
+        }
+    }
+
+    private fun toolCallStream(): String {
+        val prefix = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"gpt-4o-mini\","
+        val chunks = listOf(
+            "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"tool_calls\":[{\"index\":0," +
+                    "\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\"toUppercase\"," +
+                    "\"arguments\":\"{\\\"input\\\":\\\"hello\\\"}\"}}]},\"finish_reason\":null}]",
+            "\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"tool_calls\"}]",
+        )
+        return chunks.joinToString("") { "data: $prefix$it}\n\n" } + "data: [DONE]\n\n"
+    }
+}
@@ -0,0 +1,51 @@
+package com.javaaidev.openai
+
+import com.openai.models.FunctionDefinition
+import com.openai.models.chat.completions.ChatCompletionTool
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+
+class ChatCompletionToolCacheTest {
+    private var builds = 0
+
+    private fun build(name: String): ChatCompletionTool {
+        builds++
+        return ChatCompletionTool.builder()
+            .function(FunctionDefinition.builder().name(name).build())
+            .build()
+    }
+
+    @Test
+    @DisplayName("Unchanged tools are built once")
+    fun testCached() {
+        val cache = ChatCompletionToolCache()
+        val schema = "{\"type\":\"object\"}"
+        val first = cache.get("toUppercase", "Uppercase", schema, null, false) { build("toUppercase") }
+        val second = cache.get("toUppercase", "Uppercase", String(schema.toCharArray()), null, false) { build("toUppercase") }
+        assertSame(first, second)
+        assertEquals(1, builds)
+    }
+
+    @Test
+    @DisplayName("Changed schema builds a new tool")
+    fun testSchemaChanged() {
+        val cache = ChatCompletionToolCache()
+        val first = cache.get("toUppercase", null, "{\"type\":\"object\"}", null, false) { build("toUppercase") }
+        val second = cache.get("toUppercase", null, mapOf("type" to "object"), null, false) { build("toUppercase") }
+        assertNotSame(first, second)
+        assertEquals(2, builds)
+    }
+
+    @Test
+    @DisplayName("Cache is cleared when full")
+    fun testMaxSize() {
+        val cache = ChatCompletionToolCache(2)
+        cache.get("a", null, "{}", null, false) { build("a") }
+        cache.get("b", null, "{}", null, false) { build("b") }
+        cache.get("c", null, "{}", null, false) { build("c") }
+        assertEquals(1, cache.size())
+    }
+}
@@ -0,0 +1,94 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Path
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertNotEquals
+import kotlin.test.assertNull
+
+class EmbeddingCacheTest {
+
+    @Test
+    @DisplayName("Key depends on model, dimensions and text")
+    fun testKey() {
+        val key = EmbeddingCache.key("text-embedding-3-small", 256, "hello")
+        assertEquals(64, key.length)
+        assertEquals(key, EmbeddingCache.key("text-embedding-3-small", 256, "hello"))
+        assertNotEquals(key, EmbeddingCache.key("text-embedding-3-large", 256, "hello"))
+        assertNotEquals(key, EmbeddingCache.key("text-embedding-3-small", null, "hello"))
+        assertNotEquals(key, EmbeddingCache.key("text-embedding-3-small", 256, "world"))
+    }
+
+    @Test
+    @DisplayName("In-memory cache evicts least recently used")
+    fun testInMemory() {
+        val cache = InMemoryEmbeddingCache(2)
+        cache.put("a", floatArrayOf(1f))
+        cache.put("b", floatArrayOf(2f))
+        cache.get("a")
+        cache.put("c", floatArrayOf(3f))
+        assertEquals(2, cache.size())
+        assertNull(cache.get("b"))
+        assertContentEquals(floatArrayOf(1f), cache.get("a"))
+        assertContentEquals(floatArrayOf(3f), cache.get("c"))
+    }
+
+    @Test
+    @DisplayName("In-memory cache copies embeddings")
+    fun testInMemoryCopies() {
+        val cache = InMemoryEmbeddingCache()
+        val embedding = floatArrayOf(1f, 2f)
+        cache.put("a", embedding)
+        embedding[0] = 0f
+        cache.get("a")!![1] = 0f
+        assertContentEquals(floatArrayOf(1f, 2f), cache.get("a"))
+    }
+
+    @Test
+    @DisplayName("Memory-mapped cache survives reopening")
+    fun testMappedFile(@TempDir dir: Path) {
+        val file = dir.resolve("embeddings.bin")
+        MappedFileEmbeddingCache(file, 1024).use { cache ->
+            cache.put("a", floatArrayOf(0.5f, -1.25f))
+            cache.put("b", floatArrayOf(3f))
+            assertContentEquals(floatArrayOf(0.5f, -1.25f), cache.get("a"))
+        }
+        MappedFileEmbeddingCache(file, 1024).use { cache ->
+            assertEquals(2, cache.size())
+            assertContentEquals(floatArrayOf(0.5f, -1.25f), cache.get("a"))
+            assertContentEquals(floatArrayOf(3f), cache.get("b"))
+            assertNull(cache.get("c"))
+        }
+    }
+
+    @Test
+    @DisplayName("Memory-mapped cache reopened with a smaller size keeps records that fit")
+    fun testMappedFileShrunk(@TempDir dir: Path) {
+        val file = dir.resolve("embeddings.bin")
+        MappedFileEmbeddingCache(file, 1024).use { cache ->
+            cache.put("a", FloatArray(8) { it.toFloat() })
+            cache.put("b", FloatArray(8))
+        }
+        MappedFileEmbeddingCache(file, 64).use { cache ->
+            assertEquals(1, cache.size())
+            assertContentEquals(FloatArray(8) { it.toFloat() }, cache.get("a"))
+            assertNull(cache.get("b"))
+            cache.put("c", floatArrayOf(1f))
+            assertContentEquals(floatArrayOf(1f), cache.get("c"))
+        }
+    }
+
+    @Test
+    @DisplayName("Memory-mapped cache stops storing when full")
+    fun testMappedFileFull(@TempDir dir: Path) {
+        MappedFileEmbeddingCache(dir.resolve("embeddings.bin"), 64).use { cache ->
+            cache.put("a", FloatArray(8))
+            cache.put("b", FloatArray(8))
+            assertContentEquals(FloatArray(8), cache.get("a"))
+            assertNull(cache.get("b"))
+        }
+    }
+}
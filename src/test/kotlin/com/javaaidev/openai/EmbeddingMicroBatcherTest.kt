@@ -0,0 +1,84 @@
+package com.javaaidev.openai
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class EmbeddingMicroBatcherTest {
+
+    @Test
+    @DisplayName("Full batch is sent without waiting")
+    fun testMaxBatchSize() {
+        val batchSizes = mutableListOf<Int>()
+        val batcher = EmbeddingMicroBatcher(MicroBatchingConfig(2, Duration.ofMinutes(1))) { texts ->
+            synchronized(batchSizes) { batchSizes.add(texts.size) }
+            texts.map { floatArrayOf(it.length.toFloat()) }
+        }
+        val first = batcher.submit("a")
+        val second = batcher.submit("bb")
+        assertContentEquals(floatArrayOf(1f), first.get(5, TimeUnit.SECONDS))
+        assertContentEquals(floatArrayOf(2f), second.get(5, TimeUnit.SECONDS))
+        assertEquals(listOf(2), batchSizes)
+    }
+
+    @Test
+    @DisplayName("Partial batch is sent after max delay")
+    fun testMaxDelay() {
+        val batcher = EmbeddingMicroBatcher(MicroBatchingConfig(10, Duration.ofMillis(20))) { texts ->
+            texts.map { floatArrayOf(it.length.toFloat()) }
+        }
+        assertContentEquals(floatArrayOf(3f), batcher.embed("abc"))
+        assertEquals(1, batcher.batchCount)
+    }
+
+    @Test
+    @DisplayName("Failure of a batch is shared by its callers")
+    fun testFailure() {
+        val batcher = EmbeddingMicroBatcher(MicroBatchingConfig(10, Duration.ofMillis(20))) {
+            throw IllegalArgumentException("failed")
+        }
+        assertFailsWith<IllegalArgumentException> { batcher.embed("abc") }
+    }
+
+    @Test
+    @DisplayName("Concurrent embed calls are sent in one request")
+    fun testEmbeddingModel() {
+        val mapper = ObjectMapper()
+        MockOpenAIServer { request ->
+            val count = mapper.readTree(request.body)["input"].size()
+            MockOpenAIServer.Response(MockOpenAIServer.embeddings(count))
+        }.use { server ->
+            val embeddingModel = OpenAIEmbeddingModel(
+                server.client(),
+                OpenAIEmbeddingOptions.builder().model("text-embedding-3-small").build(),
+                microBatching = MicroBatchingConfig(8, Duration.ofMillis(200))
+            )
+            val executor = Executors.newFixedThreadPool(8)
+            try {
+                val start = CountDownLatch(1)
+                val futures = (0 until 8).map { index ->
+                    executor.submit(Callable {
+                        start.await()
+                        embeddingModel.embed("text $index")
+                    })
+                }
+                start.countDown()
+                val embeddings = futures.map { it.get(10, TimeUnit.SECONDS) }
+                assertTrue(embeddings.all { it.size == 3 })
+                assertEquals(1, server.requestCount)
+                assertEquals(1, embeddingModel.microBatchCount)
+            } finally {
+                executor.shutdownNow()
+            }
+        }
+    }
+}
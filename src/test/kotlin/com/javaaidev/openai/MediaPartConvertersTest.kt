@@ -0,0 +1,79 @@
+package com.javaaidev.openai
+
+import com.openai.models.chat.completions.ChatCompletionContentPart
+import com.openai.models.chat.completions.ChatCompletionContentPartInputAudio
+import com.openai.models.chat.completions.ChatCompletionContentPartText
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.content.Media
+import org.springframework.util.MimeType
+import org.springframework.util.MimeTypeUtils
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class MediaPartConvertersTest {
+    private val converters = MediaPartConverters()
+    private val encoder = OpenAiMediaEncoder()
+
+    private fun convert(mimeType: String): ChatCompletionContentPart {
+        val media = Media.builder()
+            .mimeType(MimeTypeUtils.parseMimeType(mimeType))
+            .data(byteArrayOf(1, 2, 3))
+            .name("document")
+            .build()
+        return converters.converterFor(media.mimeType).convert(media, encoder)
+    }
+
+    @Test
+    @DisplayName("Audio aliases map to input audio formats")
+    fun testAudio() {
+        assertEquals(ChatCompletionContentPartInputAudio.InputAudio.Format.MP3, convert("audio/mpeg").asInputAudio().inputAudio().format())
+        assertEquals(ChatCompletionContentPartInputAudio.InputAudio.Format.WAV, convert("audio/x-wav").asInputAudio().inputAudio().format())
+        assertEquals(ChatCompletionContentPartInputAudio.InputAudio.Format.WAV, convert("audio/wav;rate=16000").asInputAudio().inputAudio().format())
+    }
+
+    @Test
+    @DisplayName("PDF is sent as file part")
+    fun testPdf() {
+        val file = convert("application/pdf").asFile().file()
+        assertEquals("data:application/pdf;base64,AQID", file.fileData().get())
+        assertEquals("document", file.filename().get())
+    }
+
+    @Test
+    @DisplayName("Documents and unknown types are sent as file part")
+    fun testDocuments() {
+        assertEquals("data:text/plain;base64,AQID", convert("text/plain").asFile().file().fileData().get())
+        assertTrue(convert("application/vnd.openxmlformats-officedocument.wordprocessingml.document").isFile())
+        assertTrue(convert("application/octet-stream").isFile())
+        assertTrue(convert("video/mp4").isFile())
+    }
+
+    @Test
+    @DisplayName("URL can't be sent as file part")
+    fun testFileUrl() {
+        val media = Media.builder()
+            .mimeType(MediaPartConverters.APPLICATION_PDF)
+            .data("https://example.com/document.pdf")
+            .build()
+        assertFailsWith<IllegalArgumentException> { MediaPartConverters.FILE.convert(media, encoder) }
+    }
+
+    @Test
+    @DisplayName("Images are sent as image URL")
+    fun testImage() {
+        assertEquals("data:image/webp;base64,AQID", convert("image/webp").asImageUrl().imageUrl().url())
+    }
+
+    @Test
+    @DisplayName("Custom converter")
+    fun testCustomConverter() {
+        converters.register(MimeType("text", "*")) { media, _ ->
+            ChatCompletionContentPart.ofText(
+                ChatCompletionContentPartText.builder().text(String(media.dataAsByteArray)).build()
+            )
+        }
+        assertTrue(convert("text/markdown").isText())
+    }
+}
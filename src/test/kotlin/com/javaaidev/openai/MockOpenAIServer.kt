@@ -0,0 +1,121 @@
+package com.javaaidev.openai
+
+import com.openai.client.OpenAIClient
+import com.openai.client.okhttp.OpenAIOkHttpClient
+import com.sun.net.httpserver.HttpServer
+import java.net.InetSocketAddress
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Local HTTP server answering OpenAI API requests with [handler].
+ */
+class MockOpenAIServer(private val handler: (Request) -> Response) : AutoCloseable {
+    class Request(val path: String, val body: String)
+
+    class Response(
+        val body: String,
+        val status: Int = 200,
+        val headers: Map<String, String> = mapOf(),
+        val delay: Duration = Duration.ZERO,
+    )
+
+    private val executor: ExecutorService = Executors.newCachedThreadPool()
+    private val server: HttpServer = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+    private val requests = AtomicInteger()
+
+    val requestCount: Int
+        get() = requests.get()
+
+    val baseUrl: String
+        get() = "http://localhost:${server.address.port}/v1"
+
+    init {
+        server.executor = executor
+        server.createContext("/") { exchange ->
+            requests.incrementAndGet()
+            val request = Request(
+                exchange.requestURI.path,
+                String(exchange.requestBody.readAllBytes(), StandardCharsets.UTF_8)
+            )
+            val response = handler(request)
+            if (!response.delay.isZero) {
+                Thread.sleep(response.delay.toMillis())
+            }
+            if (response.headers.keys.none { it.equals("Content-Type", true) }) {
+                exchange.responseHeaders.add("Content-Type", "application/json")
+            }
+            response.headers.forEach { (name, value) -> exchange.responseHeaders.add(name, value) }
+            val bytes = response.body.toByteArray(StandardCharsets.UTF_8)
+            exchange.sendResponseHeaders(response.status, bytes.size.toLong())
+            exchange.responseBody.use { it.write(bytes) }
+        }
+        server.start()
+    }
+
+    fun client(): OpenAIClient {
+        return OpenAIOkHttpClient.builder()
+            .apiKey("test")
+            .baseUrl(baseUrl)
+            .maxRetries(0)
+            .build()
+    }
+
+    override fun close() {
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    companion object {
+        fun completion(text: String, promptTokens: Int = 10, completionTokens: Int = 5): String {
+            return "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o-mini\"," +
+                    "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"$text\",\"refusal\":null}," +
+                    "\"logprobs\":null,\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":$promptTokens," +
+                    "\"completion_tokens\":$completionTokens,\"total_tokens\":${promptTokens + completionTokens}}}"
+        }
+
+        /**
+         * Completion asking to call tool [name] with JSON [arguments].
+         */
+        fun toolCall(name: String, arguments: String): String {
+            val escaped = arguments.replace("\\", "\\\\").replace("\"", "\\\"")
+            return "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o-mini\"," +
+                    "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":null,\"refusal\":null," +
+                    "\"tool_calls\":[{\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\"$name\"," +
+                    "\"arguments\":\"$escaped\"}}]},\"logprobs\":null,\"finish_reason\":\"tool_calls\"}]," +
+                    "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}}"
+        }
+
+        /**
+         * Server-sent events streaming [text] in one chunk, followed by a usage chunk.
+         */
+        fun stream(text: String): Response {
+            val prefix = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1," +
+                    "\"model\":\"gpt-4o-mini\","
+            val chunks = listOf(
+                "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"$text\"}," +
+                        "\"finish_reason\":null}]",
+                "\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]",
+                "\"choices\":[],\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}",
+            )
+            val body = chunks.joinToString("") { "data: $prefix$it}\n\n" } + "data: [DONE]\n\n"
+            return Response(body, headers = mapOf("Content-Type" to "text/event-stream"))
+        }
+
+        fun embeddings(count: Int, dimensions: Int = 3, promptTokens: Int = 2): String {
+            val data = (0 until count).joinToString(",") { index ->
+                val vector = (0 until dimensions).joinToString(",") { (index + it * 0.5).toString() }
+                "{\"object\":\"embedding\",\"index\":$index,\"embedding\":[$vector]}"
+            }
+            return "{\"object\":\"list\",\"data\":[$data],\"model\":\"text-embedding-3-small\"," +
+                    "\"usage\":{\"prompt_tokens\":$promptTokens,\"total_tokens\":$promptTokens}}"
+        }
+
+        fun error(message: String): String {
+            return "{\"error\":{\"message\":\"$message\",\"type\":\"server_error\",\"param\":null,\"code\":null}}"
+        }
+    }
+}
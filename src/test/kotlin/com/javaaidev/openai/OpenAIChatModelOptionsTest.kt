@@ -0,0 +1,169 @@
+package com.javaaidev.openai
+
+import com.openai.client.okhttp.OpenAIOkHttpClient
+import com.openai.core.JsonObject
+import com.openai.core.JsonValue
+import com.openai.models.ReasoningEffort
+import com.openai.models.chat.completions.ChatCompletionAudioParam
+import com.openai.models.chat.completions.ChatCompletionCreateParams
+import org.junit.jupiter.api.DynamicTest
+import org.junit.jupiter.api.TestFactory
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.openai.api.OpenAiApi
+import org.springframework.ai.openai.api.OpenAiApi.ChatCompletionRequest.AudioParameters
+import org.springframework.ai.openai.api.ResponseFormat
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class OpenAIChatModelOptionsTest {
+    private val chatModel = OpenAIChatModel(
+        OpenAIOkHttpClient.builder().apiKey("test").build()
+    )
+
+    private data class OptionCase(
+        val name: String,
+        val streaming: Boolean = false,
+        val configure: (OpenAiChatOptions.Builder) -> Unit,
+        val verify: (ChatCompletionCreateParams) -> Unit,
+    )
+
+    private val cases = listOf(
+        OptionCase("model", configure = { it.model("gpt-4.1-mini") }) {
+            assertEquals("gpt-4.1-mini", it.model().asString())
+        },
+        OptionCase("temperature", configure = { it.temperature(0.3) }) {
+            assertEquals(0.3, it.temperature().get())
+        },
+        OptionCase("frequencyPenalty", configure = { it.frequencyPenalty(0.5) }) {
+            assertEquals(0.5, it.frequencyPenalty().get())
+        },
+        OptionCase("presencePenalty", configure = { it.presencePenalty(0.6) }) {
+            assertEquals(0.6, it.presencePenalty().get())
+        },
+        OptionCase("logitBias", configure = { it.logitBias(mapOf("50256" to -100)) }) {
+            assertEquals(JsonValue.from(-100), it.logitBias().get()._additionalProperties()["50256"])
+        },
+        OptionCase("logprobs", configure = { it.logprobs(true) }) {
+            assertEquals(true, it.logprobs().get())
+        },
+        OptionCase("topLogprobs", configure = { it.topLogprobs(3) }) {
+            assertEquals(3L, it.topLogprobs().get())
+        },
+        OptionCase("maxTokens", configure = { it.maxTokens(128) }) {
+            assertEquals(128L, it.maxTokens().get())
+        },
+        OptionCase("maxCompletionTokens", configure = { it.maxCompletionTokens(256) }) {
+            assertEquals(256L, it.maxCompletionTokens().get())
+        },
+        OptionCase("n", configure = { it.N(2) }) {
+            assertEquals(2L, it.n().get())
+        },
+        OptionCase("outputModalities", configure = { it.outputModalities(listOf("text", "audio")) }) {
+            assertEquals(
+                listOf(ChatCompletionCreateParams.Modality.TEXT, ChatCompletionCreateParams.Modality.AUDIO),
+                it.modalities().get()
+            )
+        },
+        OptionCase("outputAudio", configure = {
+            it.outputAudio(AudioParameters(AudioParameters.Voice.ALLOY, AudioParameters.AudioResponseFormat.MP3))
+        }) {
+            assertEquals(ChatCompletionAudioParam.Voice.ALLOY, it.audio().get().voice())
+            assertEquals(ChatCompletionAudioParam.Format.MP3, it.audio().get().format())
+        },
+        OptionCase("responseFormat", configure = {
+            it.responseFormat(ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, """{"type":"object"}"""))
+        }) {
+            assertTrue(it.responseFormat().get().isJsonSchema())
+        },
+        OptionCase("streamOptions", streaming = true, configure = { it.streamUsage(true) }) {
+            assertEquals(true, it.streamOptions().get().includeUsage().get())
+        },
+        OptionCase("stream usage requested by default", streaming = true, configure = {}) {
+            assertEquals(true, it.streamOptions().get().includeUsage().get())
+        },
+        OptionCase("stream usage disabled", streaming = true, configure = { it.streamUsage(false) }) {
+            assertEquals(false, it.streamOptions().get().includeUsage().get())
+        },
+        OptionCase("streamOptions ignored for call", configure = { it.streamUsage(true) }) {
+            assertFalse(it.streamOptions().isPresent)
+        },
+        OptionCase("seed", configure = { it.seed(42) }) {
+            assertEquals(42L, it.seed().get())
+        },
+        OptionCase("stop", configure = { it.stop(listOf("END")) }) {
+            assertEquals(listOf("END"), it.stop().get().asStrings())
+        },
+        OptionCase("topP", configure = { it.topP(0.9) }) {
+            assertEquals(0.9, it.topP().get())
+        },
+        OptionCase("tools", configure = {
+            it.tools(
+                listOf(
+                    OpenAiApi.FunctionTool(
+                        OpenAiApi.FunctionTool.Function("Get weather", "getWeather", """{"type":"object"}""")
+                    )
+                )
+            )
+        }) {
+            assertEquals("getWeather", it.tools().get().single().function().name())
+        },
+        OptionCase("toolChoice", configure = {
+            it.toolChoice(OpenAiApi.ChatCompletionRequest.ToolChoiceBuilder.FUNCTION("getWeather"))
+        }) {
+            assertEquals("getWeather", it.toolChoice().get().asNamedToolChoice().function().name())
+        },
+        OptionCase("user", configure = { it.user("user-1") }) {
+            assertEquals("user-1", it.user().get())
+        },
+        OptionCase("parallelToolCalls", configure = { it.parallelToolCalls(false) }) {
+            assertEquals(false, it.parallelToolCalls().get())
+        },
+        OptionCase("store", configure = { it.store(true) }) {
+            assertEquals(true, it.store().get())
+        },
+        OptionCase("metadata", configure = { it.metadata(mapOf("tenant" to "acme")) }) {
+            assertEquals(JsonValue.from("acme"), it.metadata().get()._additionalProperties()["tenant"])
+        },
+        OptionCase("reasoningEffort", configure = { it.reasoningEffort("low") }) {
+            assertEquals(ReasoningEffort.LOW, it.reasoningEffort().get())
+        },
+        OptionCase("httpHeaders", configure = { it.httpHeaders(mapOf("X-Tenant" to "acme")) }) {
+            assertEquals(listOf("acme"), it._additionalHeaders().values("X-Tenant"))
+        },
+        OptionCase("promptCacheKey", configure = { it.promptCacheKey("tenant-acme") }) {
+            assertEquals(JsonValue.from("tenant-acme"), it._additionalBodyProperties()["prompt_cache_key"])
+        },
+        OptionCase("canonicalPrompt", configure = {
+            it.canonicalPrompt(true).tools(
+                listOf("zeta", "alpha").map { name ->
+                    OpenAiApi.FunctionTool(
+                        OpenAiApi.FunctionTool.Function(
+                            name, name, """{"type":"object","properties":{"b":{"type":"string"},"a":{"type":"string"}}}"""
+                        )
+                    )
+                }
+            )
+        }) {
+            val tools = it.tools().get()
+            assertEquals(listOf("alpha", "zeta"), tools.map { tool -> tool.function().name() })
+            val properties = tools.first().function().parameters().get()._additionalProperties()["properties"]
+            assertEquals(listOf("a", "b"), (properties as JsonObject).values.keys.toList())
+        },
+    )
+
+    @TestFactory
+    fun testOptionsReachParams(): List<DynamicTest> {
+        return cases.map { case ->
+            DynamicTest.dynamicTest(case.name) {
+                val builder = OpenAiChatOptions.builder().model("gpt-4o-mini")
+                case.configure(builder)
+                val params = chatModel.buildChatCompletionCreateParams(
+                    Prompt("hello", builder.build()),
+                    case.streaming
+                )
+                case.verify(params)
+            }
+        }
+    }
+}
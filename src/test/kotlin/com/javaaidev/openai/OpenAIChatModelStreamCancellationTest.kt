@@ -0,0 +1,96 @@
+package com.javaaidev.openai
+
+import com.openai.client.OpenAIClient
+import com.openai.client.okhttp.OpenAIOkHttpClient
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+/**
+ * Streams from a local SSE server that never ends the response, and checks that the connection is
+ * released after the subscriber cancels.
+ */
+class OpenAIChatModelStreamCancellationTest {
+    private lateinit var server: HttpServer
+    private lateinit var client: OpenAIClient
+    private lateinit var connectionClosed: CountDownLatch
+
+    @BeforeEach
+    fun setUp() {
+        connectionClosed = CountDownLatch(1)
+        server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        server.executor = Executors.newCachedThreadPool()
+        server.createContext("/v1/chat/completions") { exchange ->
+            exchange.requestBody.readAllBytes()
+            exchange.responseHeaders.add("Content-Type", "text/event-stream")
+            exchange.sendResponseHeaders(200, 0)
+            try {
+                exchange.responseBody.use { body ->
+                    var index = 0
+                    while (true) {
+                        body.write(chunk(index++).toByteArray(StandardCharsets.UTF_8))
+                        body.flush()
+                        Thread.sleep(20)
+                    }
+                }
+            } catch (e: IOException) {
+                connectionClosed.countDown()
+            } catch (e: InterruptedException) {
+                Thread.currentThread().interrupt()
+            }
+        }
+        server.start()
+        client = OpenAIOkHttpClient.builder()
+            .apiKey("test")
+            .baseUrl("http://localhost:${server.address.port}/v1")
+            .build()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        client.close()
+        server.stop(0)
+        (server.executor as ExecutorService).shutdownNow()
+    }
+
+    @Test
+    @DisplayName("Cancel releases connection of blocking stream")
+    fun testCancelBlocking() {
+        assertCancelReleasesConnection(OpenAIChatModel(client))
+    }
+
+    @Test
+    @DisplayName("Cancel releases connection of async stream")
+    fun testCancelAsync() {
+        assertCancelReleasesConnection(OpenAIChatModel(client, openAIClientAsync = client.async()))
+    }
+
+    private fun assertCancelReleasesConnection(chatModel: OpenAIChatModel) {
+        val chatOptions = OpenAiChatOptions.builder().model("gpt-4o-mini").build()
+        val responses = chatModel.stream(Prompt("tell me a joke", chatOptions))
+            .take(3)
+            .collectList()
+            .block(Duration.ofSeconds(10))!!
+        assertEquals(3, responses.size)
+        assertTrue(connectionClosed.await(5, TimeUnit.SECONDS), "Connection is not closed after cancel")
+    }
+
+    private fun chunk(index: Int): String {
+        return "data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1," +
+                "\"model\":\"gpt-4o-mini\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"token$index \"}," +
+                "\"finish_reason\":null}]}\n\n"
+    }
+}
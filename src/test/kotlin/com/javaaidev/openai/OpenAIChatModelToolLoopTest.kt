@@ -0,0 +1,156 @@
+package com.javaaidev.openai
+
+import com.openai.client.OpenAIClient
+import com.openai.client.okhttp.OpenAIOkHttpClient
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.tool.function.FunctionToolCallback
+import java.net.InetSocketAddress
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Function
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+/**
+ * Runs the tool calling loop against a local server that keeps asking for tool calls until it sees
+ * [finishAfter] tool responses.
+ */
+class OpenAIChatModelToolLoopTest {
+    private lateinit var server: HttpServer
+    private lateinit var client: OpenAIClient
+    private val requests = AtomicInteger()
+    private var finishAfter = Int.MAX_VALUE
+
+    class ToUppercaseRequest(var input: String? = null)
+
+    class ToUppercaseResponse(var output: String? = null)
+
+    class ToUppercase : Function<ToUppercaseRequest, ToUppercaseResponse> {
+        override fun apply(t: ToUppercaseRequest): ToUppercaseResponse {
+            return ToUppercaseResponse(t.input?.uppercase())
+        }
+    }
+
+    @BeforeEach
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+        server.createContext("/v1/chat/completions") { exchange ->
+            val request = String(exchange.requestBody.readAllBytes(), StandardCharsets.UTF_8)
+            requests.incrementAndGet()
+            val finish = Regex("\"role\":\"tool\"").findAll(request).count() >= finishAfter
+            val streaming = request.contains("\"stream\":true")
+            val body = if (streaming) streamBody(finish) else completionBody(finish)
+            exchange.responseHeaders.add("Content-Type", if (streaming) "text/event-stream" else "application/json")
+            val bytes = body.toByteArray(StandardCharsets.UTF_8)
+            exchange.sendResponseHeaders(200, bytes.size.toLong())
+            exchange.responseBody.use { it.write(bytes) }
+        }
+        server.start()
+        client = OpenAIOkHttpClient.builder()
+            .apiKey("test")
+            .baseUrl("http://localhost:${server.address.port}/v1")
+            .build()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        client.close()
+        server.stop(0)
+    }
+
+    private fun options(maxToolIterations: Int): OpenAiChatOptions {
+        return OpenAiChatOptions.builder()
+            .model("gpt-4o-mini")
+            .toolCallbacks(
+                FunctionToolCallback.builder("toUppercase", ToUppercase())
+                    .description("Convert a string to uppercase")
+                    .inputType(ToUppercaseRequest::class.java)
+                    .build()
+            )
+            .maxToolIterations(maxToolIterations)
+            .build()
+    }
+
+    @Test
+    @DisplayName("Call stops after max tool iterations")
+    fun testCallMaxToolIterations() {
+        val chatModel = OpenAIChatModel(client)
+        assertFailsWith<IllegalStateException> {
+            chatModel.call(Prompt("uppercase of hello", options(2)))
+        }
+        assertEquals(3, requests.get())
+    }
+
+    @Test
+    @DisplayName("Call accumulates usage across tool rounds")
+    fun testCallUsage() {
+        finishAfter = 2
+        val chatModel = OpenAIChatModel(client)
+        val response = chatModel.call(Prompt("uppercase of hello", options(5)))
+        assertEquals("HELLO", response.result.output.text)
+        assertEquals(3, requests.get())
+        assertEquals(30, response.metadata.usage.promptTokens)
+        assertEquals(15, response.metadata.usage.completionTokens)
+        assertEquals(45, response.metadata.usage.totalTokens)
+    }
+
+    @Test
+    @DisplayName("Stream stops after max tool iterations")
+    fun testStreamMaxToolIterations() {
+        val chatModel = OpenAIChatModel(client)
+        assertFailsWith<IllegalStateException> {
+            chatModel.stream(Prompt("uppercase of hello", options(2))).blockLast(Duration.ofSeconds(10))
+        }
+        assertEquals(3, requests.get())
+    }
+
+    @Test
+    @DisplayName("Stream accumulates usage across tool rounds")
+    fun testStreamUsage() {
+        finishAfter = 1
+        val chatModel = OpenAIChatModel(client)
+        val responses = chatModel.stream(Prompt("uppercase of hello", options(5)))
+            .collectList()
+            .block(Duration.ofSeconds(10))!!
+        assertEquals("HELLO", responses.joinToString("") { it.result?.output?.text ?: "" })
+        assertEquals(2, requests.get())
+        assertEquals(30, responses.last().metadata.usage.totalTokens)
+    }
+
+    private fun completionBody(finish: Boolean): String {
+        val message = if (finish) {
+            "{\"role\":\"assistant\",\"content\":\"HELLO\",\"refusal\":null}"
+        } else {
+            "{\"role\":\"assistant\",\"content\":null,\"refusal\":null,\"tool_calls\":[{\"id\":\"call_${requests.get()}\"," +
+                    "\"type\":\"function\",\"function\":{\"name\":\"toUppercase\",\"arguments\":\"{\\\"input\\\":\\\"hello\\\"}\"}}]}"
+        }
+        return "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"gpt-4o-mini\"," +
+                "\"choices\":[{\"index\":0,\"message\":$message,\"logprobs\":null," +
+                "\"finish_reason\":\"${if (finish) "stop" else "tool_calls"}\"}]," +
+                "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}}"
+    }
+
+    private fun streamBody(finish: Boolean): String {
+        val prefix = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"gpt-4o-mini\","
+        val chunks = if (finish) {
+            listOf(
+                "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"HELLO\"},\"finish_reason\":null}]",
+                "\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]",
+            )
+        } else {
+            listOf(
+                "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"tool_calls\":[{\"index\":0," +
+                        "\"id\":\"call_${requests.get()}\",\"type\":\"function\",\"function\":{\"name\":\"toUppercase\"," +
+                        "\"arguments\":\"{\\\"input\\\":\\\"hello\\\"}\"}}]},\"finish_reason\":null}]",
+                "\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"tool_calls\"}]",
+            )
+        } + "\"choices\":[],\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}"
+        return chunks.joinToString("") { "data: $prefix$it}\n\n" } + "data: [DONE]\n\n"
+    }
+}
@@ -0,0 +1,79 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.metadata.DefaultUsage
+import org.springframework.ai.content.MediaContent
+import org.springframework.ai.embedding.Embedding
+import org.springframework.ai.embedding.EmbeddingResponse
+import org.springframework.ai.embedding.EmbeddingResponseMetadata
+import org.springframework.ai.tokenizer.TokenCountEstimator
+import kotlin.test.assertEquals
+
+class OpenAIEmbeddingBatcherTest {
+    private val tokenCountEstimator = LengthTokenCountEstimator()
+    private val batcher = OpenAIEmbeddingBatcher(tokenCountEstimator)
+
+    @Test
+    @DisplayName("Split by max items")
+    fun testSplitByItems() {
+        val inputs = (0 until 5).map { "input$it" }
+        val batches = batcher.split(inputs, 2, Int.MAX_VALUE)
+        assertEquals(listOf(0, 2, 4), batches.map { it.offset })
+        assertEquals(listOf(2, 2, 1), batches.map { it.inputs.size })
+    }
+
+    @Test
+    @DisplayName("Split by max tokens")
+    fun testSplitByTokens() {
+        val batches = batcher.split(listOf("aaaa", "bbbb", "cc", "dddddddddd", "e"), 100, 8)
+        assertEquals(
+            listOf(listOf("aaaa", "bbbb"), listOf("cc"), listOf("dddddddddd"), listOf("e")),
+            batches.map { it.inputs })
+    }
+
+    @Test
+    @DisplayName("Small inputs skip the tokenizer")
+    fun testSplitWithoutTokenizer() {
+        assertEquals(listOf(listOf("a".repeat(100))), batcher.split(listOf("a".repeat(100)), 10, 8).map { it.inputs })
+        assertEquals(listOf(listOf("aa", "bb")), batcher.split(listOf("aa", "bb"), 10, 12).map { it.inputs })
+        assertEquals(0, tokenCountEstimator.calls)
+    }
+
+    @Test
+    @DisplayName("Merge responses in input order")
+    fun testMerge() {
+        val batches = batcher.split(listOf("a", "b", "c"), 2, Int.MAX_VALUE)
+        val responses = listOf(
+            response(listOf(Embedding(floatArrayOf(1f), 1), Embedding(floatArrayOf(0f), 0)), 2),
+            response(listOf(Embedding(floatArrayOf(2f), 0)), 1),
+        )
+        val merged = batcher.merge(batches, responses)
+        assertEquals(listOf(0, 1, 2), merged.results.map { it.index })
+        assertEquals(listOf(0f, 1f, 2f), merged.results.map { it.output[0] })
+        assertEquals(3, merged.metadata.usage.promptTokens)
+        assertEquals(3, merged.metadata.usage.totalTokens)
+        assertEquals("text-embedding-3-small", merged.metadata.model)
+    }
+
+    private fun response(embeddings: List<Embedding>, tokens: Int): EmbeddingResponse {
+        return EmbeddingResponse(
+            embeddings,
+            EmbeddingResponseMetadata("text-embedding-3-small", DefaultUsage(tokens, 0, tokens))
+        )
+    }
+
+    private class LengthTokenCountEstimator : TokenCountEstimator {
+        var calls = 0
+
+        override fun estimate(text: String?): Int {
+            calls++
+            return text?.length ?: 0
+        }
+
+        override fun estimate(content: MediaContent?): Int = estimate(content?.text)
+
+        override fun estimate(messages: Iterable<MediaContent>?): Int =
+            messages?.sumOf { estimate(it) } ?: 0
+    }
+}
@@ -0,0 +1,40 @@
+package com.javaaidev.openai
+
+import com.openai.core.jsonMapper
+import com.openai.models.embeddings.CreateEmbeddingResponse
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.*
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+
+class OpenAIEmbeddingConverterTest {
+
+    private fun responseJson(embedding: String) = """
+        {"object":"list","data":[{"object":"embedding","index":0,"embedding":$embedding}],
+        "model":"text-embedding-3-small","usage":{"prompt_tokens":2,"total_tokens":2}}
+    """.trimIndent()
+
+    @Test
+    @DisplayName("Decode base64 embeddings")
+    fun testBase64() {
+        val vector = floatArrayOf(0.25f, -1.5f, 3.0e-4f)
+        val buffer = ByteBuffer.allocate(vector.size * 4).order(ByteOrder.LITTLE_ENDIAN)
+        buffer.asFloatBuffer().put(vector)
+        val encoded = Base64.getEncoder().encodeToString(buffer.array())
+        val response = jsonMapper().readValue(responseJson("\"$encoded\""), CreateEmbeddingResponse::class.java)
+        val result = OpenAIEmbeddingConverter.toEmbeddingResponse(response)
+        assertContentEquals(vector, result.results.single().output)
+        assertEquals(2, result.metadata.usage.promptTokens)
+    }
+
+    @Test
+    @DisplayName("Decode float embeddings")
+    fun testFloat() {
+        val response = jsonMapper().readValue(responseJson("[0.25,-1.5]"), CreateEmbeddingResponse::class.java)
+        val result = OpenAIEmbeddingConverter.toEmbeddingResponse(response)
+        assertContentEquals(floatArrayOf(0.25f, -1.5f), result.results.single().output)
+    }
+}
@@ -0,0 +1,76 @@
+package com.javaaidev.openai
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.embedding.EmbeddingRequest
+import java.util.concurrent.CopyOnWriteArrayList
+import kotlin.test.assertEquals
+
+/**
+ * Calls a local server answering each input with a one-dimensional embedding of its length.
+ */
+class OpenAIEmbeddingModelMockServerTest {
+    private val mapper = ObjectMapper()
+    private val requestInputs = CopyOnWriteArrayList<List<String>>()
+    private val server = MockOpenAIServer { request ->
+        val inputs = mapper.readTree(request.body)["input"].map { it.asText() }
+        requestInputs.add(inputs)
+        val data = inputs.mapIndexed { index, input ->
+            "{\"object\":\"embedding\",\"index\":$index,\"embedding\":[${input.length}.0]}"
+        }.joinToString(",")
+        MockOpenAIServer.Response(
+            "{\"object\":\"list\",\"data\":[$data],\"model\":\"text-embedding-3-small\"," +
+                    "\"usage\":{\"prompt_tokens\":${inputs.size},\"total_tokens\":${inputs.size}}}"
+        )
+    }
+    private val client = server.client()
+    private val defaultOptions = OpenAIEmbeddingOptions.builder().model("text-embedding-3-small").build()
+
+    @AfterEach
+    fun tearDown() {
+        client.close()
+        server.close()
+    }
+
+    private fun lengths(inputs: List<String>): List<Float> = inputs.map { it.length.toFloat() }
+
+    @Test
+    @DisplayName("Batching limits are applied per request")
+    fun testRequestBatchingOptions() {
+        val embeddingModel = OpenAIEmbeddingModel(client, defaultOptions)
+        val inputs = listOf("a", "bb", "ccc", "dddd", "eeeee")
+        val response = embeddingModel.call(
+            EmbeddingRequest(
+                inputs,
+                OpenAIEmbeddingOptions.builder().maxBatchSize(2).maxConcurrentBatches(1).build()
+            )
+        )
+        assertEquals(listOf(2, 2, 1), requestInputs.map { it.size })
+        assertEquals(lengths(inputs), response.results.map { it.output[0] })
+        assertEquals((0 until 5).toList(), response.results.map { it.index })
+        assertEquals(5, response.metadata.usage.totalTokens)
+    }
+
+    @Test
+    @DisplayName("Only cache misses are sent, once per distinct input")
+    fun testCachedCall() {
+        val embeddingModel = OpenAIEmbeddingModel(client, defaultOptions, embeddingCache = InMemoryEmbeddingCache())
+        embeddingModel.call(EmbeddingRequest(listOf("bb", "dddd"), null))
+        requestInputs.clear()
+
+        val inputs = listOf("a", "bb", "ccc", "a", "dddd", "ccc")
+        val response = embeddingModel.call(EmbeddingRequest(inputs, null))
+        assertEquals(listOf(listOf("a", "ccc")), requestInputs)
+        assertEquals(lengths(inputs), response.results.map { it.output[0] })
+        assertEquals((0 until 6).toList(), response.results.map { it.index })
+        assertEquals(2, embeddingModel.cacheHitCount)
+        assertEquals(6, embeddingModel.cacheMissCount)
+        assertEquals(2, response.metadata.usage.totalTokens)
+
+        requestInputs.clear()
+        embeddingModel.call(EmbeddingRequest(inputs, null))
+        assertEquals(emptyList(), requestInputs)
+    }
+}
@@ -0,0 +1,87 @@
+package com.javaaidev.openai
+
+import com.openai.client.okhttp.OpenAIOkHttpClient
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.model.tool.ToolCallingChatOptions
+import java.time.Duration
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+
+class OpenAiChatOptionsMergeTest {
+    private val defaultOptions = OpenAiChatOptions.builder()
+        .model("gpt-4o-mini")
+        .temperature(0.7)
+        .seed(42)
+        .httpHeaders(mapOf("X-Default" to "default", "X-Shared" to "default"))
+        .toolNames("defaultTool")
+        .toolContext(mapOf("tenant" to "default"))
+        .maxToolIterations(10)
+        .build()
+
+    @Test
+    @DisplayName("Runtime values win over defaults")
+    fun testMerge() {
+        val runtimeOptions = OpenAiChatOptions.builder()
+            .temperature(0.0)
+            .httpHeaders(mapOf("X-Shared" to "runtime"))
+            .toolNames("runtimeTool")
+            .toolContext(mapOf("user" to "alice"))
+            .toolLoopTimeout(Duration.ofSeconds(30))
+            .build()
+        val merged = OpenAiChatOptions.merge(runtimeOptions, defaultOptions)
+        assertEquals("gpt-4o-mini", merged.model)
+        assertEquals(0.0, merged.temperature)
+        assertEquals(42, merged.seed)
+        assertEquals(mapOf("X-Default" to "default", "X-Shared" to "runtime"), merged.httpHeaders)
+        assertEquals(setOf("runtimeTool"), merged.toolNames)
+        assertEquals(mapOf("tenant" to "default", "user" to "alice"), merged.toolContext)
+        assertEquals(10, merged.maxToolIterations)
+        assertEquals(Duration.ofSeconds(30), merged.toolLoopTimeout)
+    }
+
+    @Test
+    @DisplayName("Generic options are converted without reflection")
+    fun testFromChatOptions() {
+        val chatOptions = ToolCallingChatOptions.builder()
+            .model("gpt-4o")
+            .maxTokens(100)
+            .stopSequences(listOf("END"))
+            .toolNames("runtimeTool")
+            .internalToolExecutionEnabled(false)
+            .build()
+        val options = OpenAiChatOptions.fromChatOptions(chatOptions)
+        assertEquals("gpt-4o", options.model)
+        assertEquals(100, options.maxTokens)
+        assertEquals(listOf("END"), options.stop)
+        assertEquals(setOf("runtimeTool"), options.toolNames)
+        assertEquals(false, options.internalToolExecutionEnabled)
+        assertSame(defaultOptions, OpenAiChatOptions.fromChatOptions(defaultOptions))
+    }
+
+    @Test
+    @DisplayName("Merged and request options don't share collections with the defaults")
+    fun testCollectionsCopied() {
+        val defaultOptions = OpenAiChatOptions.builder()
+            .model("gpt-4o-mini")
+            .stop(listOf("END"))
+            .metadata(mapOf("team" to "search"))
+            .logitBias(mapOf("50256" to -100))
+            .build()
+        val merged = OpenAiChatOptions.merge(OpenAiChatOptions.builder().build(), defaultOptions)
+        merged.stop.add("STOP")
+        merged.metadata["tenant"] = "a"
+        merged.logitBias["1"] = 1
+        assertEquals(listOf("END"), defaultOptions.stop)
+        assertEquals(mapOf("team" to "search"), defaultOptions.metadata)
+        assertEquals(mapOf("50256" to -100), defaultOptions.logitBias)
+
+        val chatModel = OpenAIChatModel(OpenAIOkHttpClient.builder().apiKey("test").build(), options = defaultOptions)
+        val requestOptions = chatModel.buildRequestPrompt(Prompt("hello")).options as OpenAiChatOptions
+        assertNotSame(defaultOptions, requestOptions)
+        requestOptions.metadata["tenant"] = "b"
+        assertEquals(mapOf("team" to "search"), defaultOptions.metadata)
+    }
+}
@@ -0,0 +1,82 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.springframework.ai.content.Media
+import org.springframework.util.MimeTypeUtils
+import java.io.ByteArrayInputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.*
+import kotlin.random.Random
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertSame
+
+class OpenAiMediaEncoderTest {
+    private val bytes = Random(42).nextBytes(200_003)
+    private val expected = Base64.getEncoder().encodeToString(bytes)
+
+    private fun media(data: Any): Media {
+        return Media.builder().mimeType(MimeTypeUtils.IMAGE_PNG).data(data).build()
+    }
+
+    @Test
+    @DisplayName("Encode byte array as data URL")
+    fun testByteArray() {
+        assertEquals("data:image/png;base64,$expected", OpenAiMediaEncoder().toDataUrl(media(bytes)))
+    }
+
+    @Test
+    @DisplayName("Encode path and input stream in chunks")
+    fun testStreams(@TempDir dir: Path) {
+        val file = Files.write(dir.resolve("image.png"), bytes)
+        val encoder = OpenAiMediaEncoder()
+        assertEquals(expected, encoder.toBase64(media(file)))
+        assertEquals(expected, encoder.toBase64(media(ByteArrayInputStream(bytes))))
+    }
+
+    @Test
+    @DisplayName("Encoded data is memoized per media")
+    fun testMemoized() {
+        val encoder = OpenAiMediaEncoder()
+        val media = media(ByteArrayInputStream(bytes))
+        val first = encoder.toDataUrl(media)
+        assertSame(first, encoder.toDataUrl(media))
+    }
+
+    @Test
+    @DisplayName("Encoded data is shared by encoders")
+    fun testSharedMemo() {
+        val media = media(ByteArrayInputStream(bytes))
+        assertEquals(expected, OpenAiMediaEncoder().toBase64(media))
+        assertEquals(expected, OpenAiMediaEncoder().toBase64(media))
+        assertEquals("data:image/png;base64,$expected", OpenAiMediaEncoder().toDataUrl(media))
+    }
+
+    @Test
+    @DisplayName("Base64 is derived from the memoized data URL")
+    fun testBase64FromDataUrl() {
+        val media = media(ByteArrayInputStream(bytes))
+        val encoder = OpenAiMediaEncoder()
+        assertEquals("data:image/png;base64,$expected", encoder.toDataUrl(media))
+        assertEquals(expected, encoder.toBase64(media))
+    }
+
+    @Test
+    @DisplayName("Read input stream fails")
+    fun testConsumedStream() {
+        val stream = ByteArrayInputStream(bytes)
+        val encoder = OpenAiMediaEncoder()
+        assertEquals(expected, encoder.toBase64(media(stream)))
+        assertFailsWith<IllegalStateException> { encoder.toBase64(media(stream)) }
+    }
+
+    @Test
+    @DisplayName("URL is used as is")
+    fun testUrl() {
+        val url = "https://example.com/image.png"
+        assertSame(url, OpenAiMediaEncoder().toDataUrl(media(url)))
+    }
+}
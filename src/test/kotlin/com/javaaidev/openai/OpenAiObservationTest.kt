@@ -0,0 +1,178 @@
+package com.javaaidev.openai
+
+import com.openai.errors.InternalServerException
+import io.micrometer.observation.tck.TestObservationRegistry
+import io.micrometer.observation.tck.TestObservationRegistryAssert.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.embedding.EmbeddingRequest
+import org.springframework.ai.tool.function.FunctionToolCallback
+import java.time.Duration
+import kotlin.test.assertFailsWith
+
+/**
+ * Checks the `gen_ai` observations and the stream and tool round observations against a local server,
+ * which asks for a tool call when the prompt mentions uppercase.
+ */
+class OpenAiObservationTest {
+    private val registry = TestObservationRegistry.create()
+
+    @Volatile
+    private var failing = false
+    private val server = MockOpenAIServer { request ->
+        when {
+            failing -> MockOpenAIServer.Response(MockOpenAIServer.error("failed"), 500)
+            request.path.endsWith("/embeddings") -> MockOpenAIServer.Response(MockOpenAIServer.embeddings(1))
+            request.body.contains("\"stream\":true") -> MockOpenAIServer.stream("Hello")
+            request.body.contains("\"role\":\"tool\"") ->
+                MockOpenAIServer.Response(MockOpenAIServer.completion("HELLO"))
+
+            request.body.contains("uppercase") ->
+                MockOpenAIServer.Response(MockOpenAIServer.toolCall("toUppercase", "{\"input\":\"hello\"}"))
+
+            else -> MockOpenAIServer.Response(MockOpenAIServer.completion("Hello"))
+        }
+    }
+    private val client = server.client()
+    private val chatModel = OpenAIChatModel(client, observationRegistry = registry)
+    private val options = OpenAiChatOptions.builder().model("gpt-4o-mini").build()
+
+    @AfterEach
+    fun tearDown() {
+        client.close()
+        server.close()
+    }
+
+    @Test
+    @DisplayName("Chat call is observed")
+    fun testCall() {
+        chatModel.call(Prompt("hello", options))
+        assertThat(registry)
+            .hasNumberOfObservationsWithNameEqualTo(GEN_AI_OBSERVATION, 1)
+            .hasObservationWithNameEqualTo(GEN_AI_OBSERVATION)
+            .that()
+            .hasLowCardinalityKeyValue(OPERATION_NAME, "chat")
+            .hasLowCardinalityKeyValue(OpenAiObservationSupport.REQUEST_MODEL, "gpt-4o-mini")
+            .doesNotHaveError()
+            .hasBeenStarted()
+            .hasBeenStopped()
+    }
+
+    @Test
+    @DisplayName("Failed chat call records the error")
+    fun testCallError() {
+        failing = true
+        assertFailsWith<InternalServerException> { chatModel.call(Prompt("hello", options)) }
+        assertThat(registry)
+            .hasObservationWithNameEqualTo(GEN_AI_OBSERVATION)
+            .that()
+            .hasError()
+            .hasBeenStopped()
+    }
+
+    @Test
+    @DisplayName("Stream chunks are observed as children of the chat observation")
+    fun testStream() {
+        chatModel.stream(Prompt("hello", options)).collectList().block(Duration.ofSeconds(10))
+        assertThat(registry)
+            .hasNumberOfObservationsWithNameEqualTo(GEN_AI_OBSERVATION, 1)
+            .hasObservationWithNameEqualTo(GEN_AI_OBSERVATION)
+            .that()
+            .hasLowCardinalityKeyValue(OPERATION_NAME, "chat")
+            .hasBeenStopped()
+        assertThat(registry)
+            .hasObservationWithNameEqualTo(OpenAiObservationSupport.STREAM_FIRST_CHUNK)
+            .that()
+            .hasParentObservationContextMatching { it.name == GEN_AI_OBSERVATION }
+            .hasBeenStopped()
+        assertThat(registry)
+            .hasObservationWithNameEqualTo(OpenAiObservationSupport.STREAM_LAST_CHUNK)
+            .that()
+            .hasParentObservationContextMatching { it.name == GEN_AI_OBSERVATION }
+            .hasLowCardinalityKeyValue(OpenAiObservationSupport.REQUEST_MODEL, "gpt-4o-mini")
+            .hasHighCardinalityKeyValue(OpenAiObservationSupport.STREAM_CHUNK_COUNT, "3")
+            .doesNotHaveError()
+            .hasBeenStopped()
+    }
+
+    @Test
+    @DisplayName("Failed stream records the error")
+    fun testStreamError() {
+        failing = true
+        assertFailsWith<InternalServerException> {
+            chatModel.stream(Prompt("hello", options)).collectList().block(Duration.ofSeconds(10))
+        }
+        assertThat(registry)
+            .hasObservationWithNameEqualTo(GEN_AI_OBSERVATION)
+            .that()
+            .hasError()
+            .hasBeenStopped()
+        assertThat(registry)
+            .hasObservationWithNameEqualTo(OpenAiObservationSupport.STREAM_FIRST_CHUNK)
+            .that()
+            .hasError()
+            .hasBeenStopped()
+        assertThat(registry)
+            .hasObservationWithNameEqualTo(OpenAiObservationSupport.STREAM_LAST_CHUNK)
+            .that()
+            .hasError()
+            .hasHighCardinalityKeyValue(OpenAiObservationSupport.STREAM_CHUNK_COUNT, "0")
+            .hasBeenStopped()
+    }
+
+    @Test
+    @DisplayName("Tool round is observed with the tool calls as children")
+    fun testToolRound() {
+        val toolOptions = OpenAiChatOptions.builder()
+            .model("gpt-4o-mini")
+            .toolCallbacks(
+                FunctionToolCallback.builder("toUppercase", OpenAIChatModelToolLoopTest.ToUppercase())
+                    .description("Convert a string to uppercase")
+                    .inputType(OpenAIChatModelToolLoopTest.ToUppercaseRequest::class.java)
+                    .build()
+            )
+            .build()
+        chatModel.call(Prompt("uppercase of hello", toolOptions))
+        assertThat(registry)
+            .hasNumberOfObservationsWithNameEqualTo(GEN_AI_OBSERVATION, 2)
+            .hasNumberOfObservationsWithNameEqualTo(OpenAiObservationSupport.TOOL_ROUND, 1)
+            .hasObservationWithNameEqualTo(OpenAiObservationSupport.TOOL_ROUND)
+            .that()
+            .hasLowCardinalityKeyValue(OpenAiObservationSupport.REQUEST_MODEL, "gpt-4o-mini")
+            .hasHighCardinalityKeyValue(OpenAiObservationSupport.TOOL_ROUND_INDEX, "1")
+            .hasHighCardinalityKeyValue(OpenAiObservationSupport.TOOL_CALL_COUNT, "1")
+            .hasBeenStopped()
+        assertThat(registry)
+            .hasObservationWithNameEqualTo(TOOL_OBSERVATION)
+            .that()
+            .hasParentObservationContextMatching { it.name == OpenAiObservationSupport.TOOL_ROUND }
+            .hasBeenStopped()
+    }
+
+    @Test
+    @DisplayName("Embedding call is observed")
+    fun testEmbedding() {
+        val embeddingModel = OpenAIEmbeddingModel(
+            client,
+            OpenAIEmbeddingOptions.builder().model("text-embedding-3-small").build(),
+            registry
+        )
+        embeddingModel.call(EmbeddingRequest(listOf("hello"), null))
+        assertThat(registry)
+            .hasNumberOfObservationsWithNameEqualTo(GEN_AI_OBSERVATION, 1)
+            .hasObservationWithNameEqualTo(GEN_AI_OBSERVATION)
+            .that()
+            .hasLowCardinalityKeyValue(OPERATION_NAME, "embedding")
+            .hasLowCardinalityKeyValue(OpenAiObservationSupport.REQUEST_MODEL, "text-embedding-3-small")
+            .doesNotHaveError()
+            .hasBeenStopped()
+    }
+
+    companion object {
+        private const val GEN_AI_OBSERVATION = "gen_ai.client.operation"
+        private const val TOOL_OBSERVATION = "spring.ai.tool"
+        private const val OPERATION_NAME = "gen_ai.operation.name"
+    }
+}
@@ -0,0 +1,114 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.openai.metadata.OpenAiRateLimit
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class OpenAiRateLimiterTest {
+    private var now = Instant.parse("2025-01-01T00:00:00Z")
+
+    @Volatile
+    private var clockError: RuntimeException? = null
+    private val clock = object : Clock() {
+        override fun getZone() = ZoneOffset.UTC
+        override fun withZone(zone: ZoneId?) = this
+        override fun instant() = clockError?.let { throw it } ?: now
+    }
+
+    private fun rateLimiter(requestsPerMinute: Long, tokensPerMinute: Long): OpenAiRateLimiter {
+        return OpenAiRateLimiter(requestsPerMinute, tokensPerMinute, JTokkitTokenCountEstimator(), clock)
+    }
+
+    @Test
+    @DisplayName("Requests per minute refill over time")
+    fun testRequests() {
+        val rateLimiter = rateLimiter(2, 1000)
+        assertTrue(rateLimiter.tryAcquire(10))
+        assertTrue(rateLimiter.tryAcquire(10))
+        assertFalse(rateLimiter.tryAcquire(10))
+        now = now.plus(Duration.ofSeconds(30))
+        assertTrue(rateLimiter.tryAcquire(10))
+    }
+
+    @Test
+    @DisplayName("Tokens per minute refill over time")
+    fun testTokens() {
+        val rateLimiter = rateLimiter(100, 1000)
+        assertTrue(rateLimiter.tryAcquire(800))
+        assertFalse(rateLimiter.tryAcquire(300))
+        now = now.plus(Duration.ofSeconds(6))
+        assertTrue(rateLimiter.tryAcquire(300))
+        assertEquals(0, rateLimiter.availableTokens())
+    }
+
+    @Test
+    @DisplayName("Unused estimated tokens are returned")
+    fun testUsedTokens() {
+        val rateLimiter = rateLimiter(100, 1000)
+        assertTrue(rateLimiter.tryAcquire(800))
+        rateLimiter.onResponse(800, 100, null)
+        assertEquals(900, rateLimiter.availableTokens())
+    }
+
+    @Test
+    @DisplayName("Rate limit headers correct the buckets")
+    fun testRateLimit() {
+        val rateLimiter = rateLimiter(100, 1000)
+        assertTrue(rateLimiter.tryAcquire(10))
+        rateLimiter.onResponse(
+            10, 10, OpenAiRateLimit(
+                100, 0, Duration.ofSeconds(20),
+                1000, 500, Duration.ofSeconds(1)
+            )
+        )
+        assertEquals(0, rateLimiter.availableRequests())
+        assertEquals(500, rateLimiter.availableTokens())
+        now = now.plus(Duration.ofSeconds(10))
+        assertFalse(rateLimiter.tryAcquire(10))
+        now = now.plus(Duration.ofSeconds(11))
+        assertTrue(rateLimiter.tryAcquire(10))
+    }
+
+    @Test
+    @DisplayName("Estimated tokens include max output tokens")
+    fun testEstimateTokens() {
+        val rateLimiter = rateLimiter(100, 1000)
+        val tokens = rateLimiter.estimateTokens(listOf("hello world", null), 100)
+        assertTrue(tokens > 100)
+    }
+
+    @Test
+    @DisplayName("Failing response headers callback ends the async stream")
+    fun testAsyncStreamHeadersFailure() {
+        MockOpenAIServer {
+            clockError = IllegalStateException("clock failed")
+            MockOpenAIServer.stream("Hello")
+        }.use { server ->
+            val client = server.client()
+            val bulkhead = Bulkhead()
+            val chatModel = OpenAIChatModel(
+                client,
+                openAIClientAsync = client.async(),
+                rateLimiter = rateLimiter(100, 100_000),
+                bulkhead = bulkhead,
+            )
+            val options = OpenAiChatOptions.builder().model("gpt-4o-mini").build()
+            val exception = assertFailsWith<IllegalStateException> {
+                chatModel.stream(Prompt("hello", options)).collectList().block(Duration.ofSeconds(10))
+            }
+            assertEquals("clock failed", exception.message)
+            assertEquals(0, bulkhead.stats("gpt-4o-mini")?.inFlight)
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.javaaidev.openai
+
+import com.openai.core.http.Headers
+import com.openai.models.completions.CompletionUsage
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import java.time.Duration
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class OpenAiResponseMetadataSupportTest {
+
+    @Test
+    @DisplayName("Parse rate limit headers")
+    fun testRateLimit() {
+        val headers = Headers.builder()
+            .put("x-ratelimit-limit-requests", "5000")
+            .put("x-ratelimit-remaining-requests", "4999")
+            .put("x-ratelimit-reset-requests", "12ms")
+            .put("x-ratelimit-limit-tokens", "2000000")
+            .put("x-ratelimit-remaining-tokens", "1999990")
+            .put("x-ratelimit-reset-tokens", "6m0s")
+            .build()
+        val rateLimit = OpenAiResponseMetadataSupport.rateLimit(headers)!!
+        assertEquals(5000L, rateLimit.requestsLimit)
+        assertEquals(4999L, rateLimit.requestsRemaining)
+        assertEquals(Duration.ofMillis(12), rateLimit.requestsReset)
+        assertEquals(2000000L, rateLimit.tokensLimit)
+        assertEquals(1999990L, rateLimit.tokensRemaining)
+        assertEquals(Duration.ofMinutes(6), rateLimit.tokensReset)
+    }
+
+    @Test
+    @DisplayName("No rate limit headers")
+    fun testNoRateLimit() {
+        assertNull(OpenAiResponseMetadataSupport.rateLimit(Headers.builder().build()))
+    }
+
+    @Test
+    @DisplayName("Parse reset durations")
+    fun testParseDuration() {
+        assertEquals(Duration.ofMillis(1500), OpenAiResponseMetadataSupport.parseDuration("1.5s"))
+        assertEquals(Duration.ofSeconds(3723), OpenAiResponseMetadataSupport.parseDuration("1h2m3s"))
+        assertNull(OpenAiResponseMetadataSupport.parseDuration(""))
+    }
+
+    @Test
+    @DisplayName("Usage with cached and reasoning tokens")
+    fun testUsageMetadata() {
+        val usage = CompletionUsage.builder()
+            .promptTokens(1200)
+            .completionTokens(300)
+            .totalTokens(1500)
+            .promptTokensDetails(CompletionUsage.PromptTokensDetails.builder().cachedTokens(1024).build())
+            .completionTokensDetails(CompletionUsage.CompletionTokensDetails.builder().reasoningTokens(256).build())
+            .build()
+        val metadata = OpenAiResponseMetadataSupport.buildResponseMetadata("chatcmpl-1", "gpt-4o-mini", usage, null)
+        assertEquals("chatcmpl-1", metadata.id)
+        assertEquals("gpt-4o-mini", metadata.model)
+        assertEquals(1200, metadata.usage.promptTokens)
+        assertEquals(300, metadata.usage.completionTokens)
+        assertEquals(1024L, metadata.get<Long>(OpenAiResponseMetadataSupport.CACHED_TOKENS))
+        assertEquals(1024.0 / 1200, metadata.get<Double>(OpenAiResponseMetadataSupport.CACHED_TOKENS_RATIO))
+        assertEquals(256L, metadata.get<Long>(OpenAiResponseMetadataSupport.REASONING_TOKENS))
+    }
+
+    @Test
+    @DisplayName("Cached and reasoning tokens are summed across tool rounds")
+    fun testAddUsage() {
+        fun metadata(promptTokens: Long, cachedTokens: Long, reasoningTokens: Long) =
+            OpenAiResponseMetadataSupport.buildResponseMetadata(
+                "chatcmpl-1", "gpt-4o-mini", CompletionUsage.builder()
+                    .promptTokens(promptTokens)
+                    .completionTokens(100)
+                    .totalTokens(promptTokens + 100)
+                    .promptTokensDetails(
+                        CompletionUsage.PromptTokensDetails.builder().cachedTokens(cachedTokens).build()
+                    )
+                    .completionTokensDetails(
+                        CompletionUsage.CompletionTokensDetails.builder().reasoningTokens(reasoningTokens).build()
+                    )
+                    .build(), null
+            )
+
+        val first = metadata(1000, 0, 64)
+        val second = OpenAiResponseMetadataSupport.addUsage(metadata(1200, 1024, 32), first)
+        val third = OpenAiResponseMetadataSupport.addUsage(metadata(1300, 1200, 0), second)
+        assertEquals(3500, third.usage.promptTokens)
+        assertEquals(300, third.usage.completionTokens)
+        assertEquals(2224L, third.get<Long>(OpenAiResponseMetadataSupport.CACHED_TOKENS))
+        assertEquals(2224.0 / 3500, third.get<Double>(OpenAiResponseMetadataSupport.CACHED_TOKENS_RATIO))
+        assertEquals(96L, third.get<Long>(OpenAiResponseMetadataSupport.REASONING_TOKENS))
+    }
+}
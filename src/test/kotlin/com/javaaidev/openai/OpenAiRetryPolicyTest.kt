@@ -0,0 +1,145 @@
+package com.javaaidev.openai
+
+import com.openai.errors.BadRequestException
+import com.openai.errors.OpenAIIoException
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import reactor.core.publisher.Flux
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.assertEquals
+import kotlin.test.assertFails
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class OpenAiRetryPolicyTest {
+    private val prompt = Prompt("hello", OpenAiChatOptions.builder().model("gpt-4o-mini").build())
+
+    private fun retryPolicy(
+        callTimeout: Duration? = null,
+        hedgeDelay: Duration? = null,
+    ): OpenAiRetryPolicy {
+        return OpenAiRetryPolicy(
+            3,
+            Duration.ofMillis(10),
+            Duration.ofSeconds(1),
+            callTimeout,
+            hedgeDelay != null,
+            hedgeDelay
+        )
+    }
+
+    @Test
+    @DisplayName("Server errors are retried")
+    fun testRetryServerError() {
+        val requests = AtomicInteger()
+        MockOpenAIServer {
+            if (requests.incrementAndGet() < 3) {
+                MockOpenAIServer.Response(MockOpenAIServer.error("unavailable"), 503)
+            } else {
+                MockOpenAIServer.Response(MockOpenAIServer.completion("Hello"))
+            }
+        }.use { server ->
+            val retryPolicy = retryPolicy()
+            val chatModel = OpenAIChatModel(server.client(), retryPolicy = retryPolicy)
+            assertEquals("Hello", chatModel.call(prompt).result.output.text)
+            assertEquals(3, server.requestCount)
+            assertEquals(2, retryPolicy.retryCount)
+        }
+    }
+
+    @Test
+    @DisplayName("Client errors are not retried")
+    fun testNoRetryClientError() {
+        MockOpenAIServer {
+            MockOpenAIServer.Response(MockOpenAIServer.error("bad request"), 400)
+        }.use { server ->
+            val chatModel = OpenAIChatModel(server.client(), retryPolicy = retryPolicy())
+            assertFailsWith<BadRequestException> { chatModel.call(prompt) }
+            assertEquals(1, server.requestCount)
+        }
+    }
+
+    @Test
+    @DisplayName("Retry-After is respected")
+    fun testRetryAfter() {
+        val requests = AtomicInteger()
+        MockOpenAIServer {
+            if (requests.incrementAndGet() == 1) {
+                MockOpenAIServer.Response(
+                    MockOpenAIServer.error("rate limited"), 429,
+                    mapOf("retry-after-ms" to "300")
+                )
+            } else {
+                MockOpenAIServer.Response(MockOpenAIServer.embeddings(1))
+            }
+        }.use { server ->
+            val embeddingModel = OpenAIEmbeddingModel(
+                server.client(),
+                OpenAIEmbeddingOptions.builder().model("text-embedding-3-small").build(),
+                retryPolicy = retryPolicy()
+            )
+            val start = System.nanoTime()
+            assertEquals(3, embeddingModel.embed("hello").size)
+            assertTrue(Duration.ofNanos(System.nanoTime() - start) >= Duration.ofMillis(300))
+            assertEquals(2, server.requestCount)
+        }
+    }
+
+    @Test
+    @DisplayName("Call fails after its deadline")
+    fun testCallTimeout() {
+        MockOpenAIServer {
+            MockOpenAIServer.Response(MockOpenAIServer.completion("Hello"), delay = Duration.ofSeconds(3))
+        }.use { server ->
+            val chatModel = OpenAIChatModel(server.client(), retryPolicy = retryPolicy(Duration.ofMillis(300)))
+            val start = System.nanoTime()
+            assertFails { chatModel.call(prompt) }
+            assertTrue(Duration.ofNanos(System.nanoTime() - start) < Duration.ofSeconds(2))
+        }
+    }
+
+    @Test
+    @DisplayName("Slow call is hedged")
+    fun testHedging() {
+        val requests = AtomicInteger()
+        MockOpenAIServer {
+            val delay = if (requests.incrementAndGet() == 1) Duration.ofSeconds(3) else Duration.ZERO
+            MockOpenAIServer.Response(MockOpenAIServer.completion("Hello"), delay = delay)
+        }.use { server ->
+            val retryPolicy = retryPolicy(hedgeDelay = Duration.ofMillis(100))
+            val chatModel = OpenAIChatModel(server.client(), retryPolicy = retryPolicy)
+            val start = System.nanoTime()
+            assertEquals("Hello", chatModel.call(prompt).result.output.text)
+            assertTrue(Duration.ofNanos(System.nanoTime() - start) < Duration.ofSeconds(2))
+            assertEquals(2, server.requestCount)
+            assertEquals(1, retryPolicy.hedgeCount)
+        }
+    }
+
+    @Test
+    @DisplayName("Stream is retried only before the first chunk")
+    fun testRetryStream() {
+        val retryPolicy = retryPolicy()
+        val subscriptions = AtomicInteger()
+        val failingFirst = Flux.defer {
+            if (subscriptions.incrementAndGet() == 1) Flux.error(OpenAIIoException("reset")) else Flux.just("a", "b")
+        }
+        assertEquals(listOf("a", "b"), retryPolicy.retryStream(failingFirst).collectList().block())
+
+        val failingAfterChunk = Flux.just("a").concatWith(Flux.error(OpenAIIoException("reset")))
+        assertFailsWith<OpenAIIoException> { retryPolicy.retryStream(failingAfterChunk).blockLast() }
+    }
+
+    @Test
+    @DisplayName("Jitter stays between base and max delay")
+    fun testNextDelay() {
+        val retryPolicy = retryPolicy()
+        var delay = retryPolicy.baseDelay
+        repeat(20) {
+            delay = retryPolicy.nextDelay(delay)
+            assertTrue(delay >= retryPolicy.baseDelay && delay <= retryPolicy.maxDelay)
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.javaaidev.openai
+
+import com.openai.core.jsonMapper
+import com.openai.models.chat.completions.ChatCompletionChunk
+import com.openai.models.chat.completions.ChatCompletionChunk.Choice.FinishReason
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+
+class OpenAiStreamChunkAccumulatorTest {
+
+    private fun loadChunks(name: String): List<ChatCompletionChunk> {
+        val mapper = jsonMapper()
+        return javaClass.getResourceAsStream("/chunks/$name")!!.bufferedReader().useLines { lines ->
+            lines.filter { it.isNotBlank() }
+                .map { mapper.readValue(it, ChatCompletionChunk::class.java) }
+                .toList()
+        }
+    }
+
+    private fun assertParallelToolCalls(chunk: ChatCompletionChunk) {
+        val choice = chunk.choices().single()
+        assertEquals(FinishReason.TOOL_CALLS, choice.finishReason().get())
+        val toolCalls = choice.delta().toolCalls().get()
+        assertEquals(listOf(0L, 1L), toolCalls.map { it.index() })
+        assertEquals(listOf("call_Wm3r9", "call_Kq8Tz"), toolCalls.map { it.id().get() })
+        assertEquals(
+            listOf("toUppercase", "toUppercase"),
+            toolCalls.map { it.function().get().name().get() })
+        assertEquals(
+            listOf("{\"input\": \"Hello\"}", "{\"input\": \"World\"}"),
+            toolCalls.map { it.function().get().arguments().get() })
+    }
+
+    @Test
+    @DisplayName("Accumulate interleaved parallel tool calls")
+    fun testAccumulateParallelToolCalls() {
+        val accumulator = OpenAiStreamChunkAccumulator()
+        loadChunks("parallel-tool-calls.jsonl").forEach { accumulator.add(it) }
+        assertParallelToolCalls(accumulator.build())
+    }
+
+    @Test
+    @DisplayName("Merge interleaved parallel tool calls")
+    fun testMergeParallelToolCalls() {
+        val helper = OpenAiStreamFunctionCallingHelper()
+        val chunk = loadChunks("parallel-tool-calls.jsonl")
+            .fold(null as ChatCompletionChunk?) { previous, current -> helper.merge(previous, current) }
+        assertParallelToolCalls(chunk!!)
+    }
+
+    @Test
+    @DisplayName("Accumulate text content")
+    fun testAccumulateText() {
+        val accumulator = OpenAiStreamChunkAccumulator()
+        loadChunks("text.jsonl").forEach { accumulator.add(it) }
+        val choice = accumulator.build().choices().single()
+        assertEquals("Why did the scarecrow win an award?", choice.delta().content().get())
+        assertEquals(FinishReason.STOP, choice.finishReason().get())
+    }
+
+    @Test
+    @DisplayName("Single chunk is passed through")
+    fun testSingleChunk() {
+        val chunk = loadChunks("text.jsonl").first()
+        assertEquals(chunk, OpenAiStreamChunkAccumulator().add(chunk).build())
+    }
+}
@@ -0,0 +1,114 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.messages.AssistantMessage
+import org.springframework.ai.chat.messages.ToolResponseMessage
+import org.springframework.ai.chat.messages.UserMessage
+import org.springframework.ai.chat.model.ChatResponse
+import org.springframework.ai.chat.model.Generation
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.model.tool.DefaultToolCallingManager
+import org.springframework.ai.tool.function.FunctionToolCallback
+import java.time.Duration
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Function
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class ParallelToolCallExecutorTest {
+
+    class SleepRequest(var millis: Long? = null)
+
+    class SleepResponse(var slept: Long? = null)
+
+    private val interruptions = AtomicInteger()
+
+    inner class Sleep : Function<SleepRequest, SleepResponse> {
+        override fun apply(t: SleepRequest): SleepResponse {
+            try {
+                Thread.sleep(t.millis ?: 0)
+            } catch (e: InterruptedException) {
+                interruptions.incrementAndGet()
+                throw e
+            }
+            return SleepResponse(t.millis)
+        }
+    }
+
+    private val toolCallingManager = DefaultToolCallingManager.builder()
+        .toolCallbackResolver {
+            FunctionToolCallback.builder("sleep", Sleep())
+                .description("Sleep for some time")
+                .inputType(SleepRequest::class.java)
+                .build()
+        }
+        .build()
+
+    private val pool = Executors.newFixedThreadPool(4)
+    private val executor = ParallelToolCallExecutor(toolCallingManager, pool)
+
+    @AfterEach
+    fun tearDown() {
+        pool.shutdownNow()
+    }
+
+    private fun awaitInterruptions(expected: Int) {
+        val deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos()
+        while (interruptions.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5)
+        }
+        assertEquals(expected, interruptions.get())
+    }
+
+    private fun toolCallResponse(vararg millis: Long): ChatResponse {
+        val toolCalls = millis.mapIndexed { index, value ->
+            AssistantMessage.ToolCall("call_$index", "function", "sleep", "{\"millis\": $value}")
+        }
+        return ChatResponse.builder()
+            .generations(listOf(Generation(AssistantMessage("", mapOf(), toolCalls))))
+            .build()
+    }
+
+    @Test
+    @DisplayName("Tool calls run concurrently and keep their order")
+    fun testParallelExecution() {
+        val prompt = Prompt(UserMessage("sleep"), OpenAiChatOptions.builder().build())
+        val start = System.nanoTime()
+        val result = executor.executeToolCalls(prompt, toolCallResponse(400, 100, 300, 200), null)
+        val elapsed = Duration.ofNanos(System.nanoTime() - start)
+        assertTrue(elapsed < Duration.ofMillis(900), "Took $elapsed")
+
+        val history = result.conversationHistory()
+        assertEquals(3, history.size)
+        val toolResponses = (history.last() as ToolResponseMessage).responses
+        assertEquals(listOf("call_0", "call_1", "call_2", "call_3"), toolResponses.map { it.id() })
+        assertTrue(toolResponses[0].responseData().contains("400"))
+        assertTrue(toolResponses[3].responseData().contains("200"))
+    }
+
+    @Test
+    @DisplayName("Tool execution times out")
+    fun testTimeout() {
+        val prompt = Prompt(UserMessage("sleep"), OpenAiChatOptions.builder().build())
+        assertFailsWith<IllegalStateException> {
+            executor.executeToolCalls(prompt, toolCallResponse(1000, 50), Duration.ofMillis(200))
+        }
+        awaitInterruptions(1)
+    }
+
+    @Test
+    @DisplayName("Failing tool call cancels the others")
+    fun testFailureCancelsOthers() {
+        val prompt = Prompt(UserMessage("sleep"), OpenAiChatOptions.builder().build())
+        val start = System.nanoTime()
+        assertFailsWith<IllegalArgumentException> {
+            executor.executeToolCalls(prompt, toolCallResponse(5000, -1), null)
+        }
+        assertTrue(Duration.ofNanos(System.nanoTime() - start) < Duration.ofSeconds(2))
+        awaitInterruptions(1)
+    }
+}
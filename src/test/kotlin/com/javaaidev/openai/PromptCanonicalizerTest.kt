@@ -0,0 +1,31 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import kotlin.test.assertEquals
+
+class PromptCanonicalizerTest {
+
+    @Test
+    @DisplayName("Sort map keys recursively")
+    fun testSortKeys() {
+        val schema = linkedMapOf(
+            "type" to "object",
+            "properties" to linkedMapOf("b" to mapOf("type" to "string"), "a" to mapOf("type" to "string")),
+            "required" to listOf("b", "a"),
+        )
+        val sorted = PromptCanonicalizer.sortKeys(schema) as Map<*, *>
+        assertEquals(listOf("properties", "required", "type"), sorted.keys.toList())
+        assertEquals(listOf("a", "b"), (sorted["properties"] as Map<*, *>).keys.toList())
+        assertEquals(listOf("b", "a"), sorted["required"])
+    }
+
+    @Test
+    @DisplayName("Normalize system message whitespace")
+    fun testNormalizeText() {
+        assertEquals(
+            "You are a helpful assistant.\nAnswer briefly.",
+            PromptCanonicalizer.normalizeText("You are a helpful assistant.  \r\nAnswer briefly.\n\n")
+        )
+    }
+}
@@ -0,0 +1,254 @@
+package com.javaaidev.openai
+
+import com.openai.errors.InternalServerException
+import com.openai.errors.OpenAIIoException
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.model.ChatModel
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.embedding.EmbeddingModel
+import org.springframework.ai.tool.function.FunctionToolCallback
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Function
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+/**
+ * Routes calls across local servers, one of which may be failing.
+ */
+class RoutingChatModelTest {
+    private val prompt = Prompt("hello", OpenAiChatOptions.builder().model("gpt-4o-mini").build())
+
+    private fun healthy(delay: Duration = Duration.ZERO) = MockOpenAIServer { request ->
+        if (request.body.contains("\"stream\":true")) {
+            MockOpenAIServer.stream("Hello")
+        } else {
+            MockOpenAIServer.Response(MockOpenAIServer.completion("Hello"), delay = delay)
+        }
+    }
+
+    private fun failing() = MockOpenAIServer {
+        MockOpenAIServer.Response(MockOpenAIServer.error("unavailable"), 503)
+    }
+
+    @Test
+    @DisplayName("Failed call fails over to the next endpoint")
+    fun testFailover() {
+        failing().use { failing ->
+            healthy().use { healthy ->
+                val chatModel = RoutingChatModel.of(listOf(failing.client(), healthy.client()))
+                repeat(4) {
+                    assertEquals("Hello", chatModel.call(prompt).result.output.text)
+                }
+                assertEquals(4, healthy.requestCount)
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Stream fails over before the first chunk")
+    fun testStreamFailover() {
+        failing().use { failing ->
+            healthy().use { healthy ->
+                val router = EndpointRouter<ChatModel>(
+                    listOf(OpenAIChatModel(failing.client()), OpenAIChatModel(healthy.client()))
+                )
+                val responses = RoutingChatModel(router).stream(prompt)
+                    .collectList()
+                    .block(Duration.ofSeconds(10))!!
+                assertEquals("Hello", responses.joinToString("") { it.result?.output?.text ?: "" })
+                assertEquals(1, healthy.requestCount)
+                assertEquals(0, router.outstanding(0) + router.outstanding(1))
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Circuit opens after consecutive failures and closes after a successful trial")
+    fun testCircuitBreaker() {
+        var now = Instant.parse("2025-01-01T00:00:00Z")
+        val clock = object : Clock() {
+            override fun getZone() = ZoneOffset.UTC
+            override fun withZone(zone: ZoneId?) = this
+            override fun instant() = now
+        }
+        failing().use { failing ->
+            healthy().use { healthy ->
+                val router = EndpointRouter<ChatModel>(
+                    listOf(OpenAIChatModel(failing.client()), OpenAIChatModel(healthy.client())),
+                    RoutingStrategy.LEAST_OUTSTANDING_REQUESTS,
+                    2,
+                    Duration.ofSeconds(30),
+                    clock
+                )
+                val chatModel = RoutingChatModel(router)
+                repeat(6) { chatModel.call(prompt) }
+                assertEquals(CircuitState.OPEN, router.circuitState(0))
+                assertEquals(2, failing.requestCount)
+
+                now = now.plus(Duration.ofSeconds(31))
+                repeat(2) { chatModel.call(prompt) }
+                assertEquals(3, failing.requestCount)
+                assertEquals(CircuitState.OPEN, router.circuitState(0))
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Trial call ending with an error doesn't exclude the endpoint")
+    fun testTrialError() {
+        var now = Instant.parse("2025-01-01T00:00:00Z")
+        val clock = object : Clock() {
+            override fun getZone() = ZoneOffset.UTC
+            override fun withZone(zone: ZoneId?) = this
+            override fun instant() = now
+        }
+        val router = EndpointRouter(
+            listOf(0),
+            RoutingStrategy.LEAST_OUTSTANDING_REQUESTS,
+            1,
+            Duration.ofSeconds(30),
+            clock
+        )
+        assertFailsWith<OpenAIIoException> { router.execute { throw OpenAIIoException("reset") } }
+        assertEquals(CircuitState.OPEN, router.circuitState(0))
+
+        now = now.plus(Duration.ofSeconds(31))
+        assertFailsWith<OutOfMemoryError> { router.execute { throw OutOfMemoryError() } }
+        assertEquals("ok", router.execute { "ok" })
+        assertEquals(CircuitState.CLOSED, router.circuitState(0))
+    }
+
+    /**
+     * Returns a tool call first, then fails.
+     */
+    private fun failingAfterToolCall(): MockOpenAIServer {
+        val requests = AtomicInteger()
+        return MockOpenAIServer {
+            if (requests.incrementAndGet() == 1) {
+                MockOpenAIServer.Response(MockOpenAIServer.toolCall("toUppercase", "{\"input\":\"hello\"}"))
+            } else {
+                MockOpenAIServer.Response(MockOpenAIServer.error("unavailable"), 503)
+            }
+        }
+    }
+
+    private fun toUppercaseOptions(toolCalls: AtomicInteger): OpenAiChatOptions {
+        val toUppercase = Function<OpenAIChatModelToolLoopTest.ToUppercaseRequest, Any> { request ->
+            toolCalls.incrementAndGet()
+            OpenAIChatModelToolLoopTest.ToUppercaseResponse(request.input?.uppercase())
+        }
+        return OpenAiChatOptions.builder()
+            .model("gpt-4o-mini")
+            .toolCallbacks(
+                FunctionToolCallback.builder("toUppercase", toUppercase)
+                    .description("Convert a string to uppercase")
+                    .inputType(OpenAIChatModelToolLoopTest.ToUppercaseRequest::class.java)
+                    .build()
+            )
+            .build()
+    }
+
+    @Test
+    @DisplayName("No failover after a tool has been executed")
+    fun testNoFailoverAfterTool() {
+        val toolCalls = AtomicInteger()
+        failingAfterToolCall().use { failing ->
+            healthy().use { healthy ->
+                val router = EndpointRouter<ChatModel>(
+                    listOf(OpenAIChatModel(failing.client()), OpenAIChatModel(healthy.client()))
+                )
+                assertFailsWith<InternalServerException> {
+                    RoutingChatModel(router).call(Prompt("uppercase of hello", toUppercaseOptions(toolCalls)))
+                }
+                assertEquals(1, toolCalls.get())
+                assertEquals(2, failing.requestCount)
+                assertEquals(0, healthy.requestCount)
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("No failover after a default tool has been executed")
+    fun testNoFailoverAfterDefaultTool() {
+        val toolCalls = AtomicInteger()
+        failingAfterToolCall().use { failing ->
+            healthy().use { healthy ->
+                val chatModel = RoutingChatModel.of(
+                    listOf(failing.client(), healthy.client()),
+                    toUppercaseOptions(toolCalls)
+                )
+                assertFailsWith<InternalServerException> {
+                    chatModel.call(Prompt("uppercase of hello"))
+                }
+                assertEquals(1, toolCalls.get())
+                assertEquals(2, failing.requestCount)
+                assertEquals(0, healthy.requestCount)
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("All endpoints failing surfaces the last error")
+    fun testAllFailing() {
+        failing().use { first ->
+            failing().use { second ->
+                val chatModel = RoutingChatModel.of(listOf(first.client(), second.client()))
+                assertFailsWith<InternalServerException> { chatModel.call(prompt) }
+                assertEquals(1, first.requestCount)
+                assertEquals(1, second.requestCount)
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Least outstanding requests spreads concurrent calls")
+    fun testLeastOutstandingRequests() {
+        healthy(Duration.ofMillis(300)).use { first ->
+            healthy(Duration.ofMillis(300)).use { second ->
+                val chatModel = RoutingChatModel.of(listOf(first.client(), second.client()))
+                val executor = Executors.newFixedThreadPool(4)
+                try {
+                    val start = CountDownLatch(1)
+                    val futures = (1..4).map {
+                        executor.submit(Callable {
+                            start.await()
+                            chatModel.call(prompt)
+                        })
+                    }
+                    start.countDown()
+                    futures.forEach { it.get(10, TimeUnit.SECONDS) }
+                } finally {
+                    executor.shutdownNow()
+                }
+                assertEquals(2, first.requestCount)
+                assertEquals(2, second.requestCount)
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Embedding calls fail over")
+    fun testEmbeddingFailover() {
+        failing().use { failing ->
+            MockOpenAIServer { MockOpenAIServer.Response(MockOpenAIServer.embeddings(1)) }.use { healthy ->
+                val options = OpenAIEmbeddingOptions.builder().model("text-embedding-3-small").build()
+                val embeddingModel: EmbeddingModel = RoutingEmbeddingModel.of(
+                    listOf(failing.client(), healthy.client()),
+                    options
+                )
+                assertEquals(3, embeddingModel.embed("hello").size)
+                assertEquals(1, healthy.requestCount)
+            }
+        }
+    }
+}
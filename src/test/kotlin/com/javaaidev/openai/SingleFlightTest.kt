@@ -0,0 +1,153 @@
+package com.javaaidev.openai
+
+import org.junit.jupiter.api.DisplayName
+import org.junit.jupiter.api.Test
+import org.springframework.ai.chat.prompt.Prompt
+import org.springframework.ai.embedding.EmbeddingRequest
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertIs
+
+class SingleFlightTest {
+
+    @Test
+    @DisplayName("Concurrent callers share the result")
+    fun testShareResult() {
+        val singleFlight = SingleFlight()
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val leader = executor.submit(Callable {
+                singleFlight.execute("key") {
+                    started.countDown()
+                    release.await(5, TimeUnit.SECONDS)
+                    "result"
+                }
+            })
+            started.await(5, TimeUnit.SECONDS)
+            val followers = (1..3).map {
+                executor.submit(Callable { singleFlight.execute("key") { "other" } })
+            }
+            while (singleFlight.coalescedCount < 3) {
+                Thread.sleep(5)
+            }
+            release.countDown()
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS))
+            followers.forEach { assertEquals("result", it.get(5, TimeUnit.SECONDS)) }
+            assertEquals(1, singleFlight.executedCount)
+            assertEquals("next", singleFlight.execute("key") { "next" })
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent callers share the failure")
+    fun testShareFailure() {
+        val singleFlight = SingleFlight()
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(2)
+        try {
+            val leader = executor.submit(Callable {
+                singleFlight.execute<String>("key") {
+                    started.countDown()
+                    release.await(5, TimeUnit.SECONDS)
+                    throw IllegalArgumentException("failed")
+                }
+            })
+            started.await(5, TimeUnit.SECONDS)
+            val follower = executor.submit(Callable { singleFlight.execute("key") { "other" } })
+            while (singleFlight.coalescedCount < 1) {
+                Thread.sleep(5)
+            }
+            release.countDown()
+            assertIs<IllegalArgumentException>(assertFailsWith<ExecutionException> { leader.get() }.cause)
+            assertIs<IllegalArgumentException>(assertFailsWith<ExecutionException> { follower.get() }.cause)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    @DisplayName("Identical embedding calls share one request")
+    fun testEmbeddingModel() {
+        val singleFlight = SingleFlight()
+        val release = CountDownLatch(1)
+        MockOpenAIServer {
+            release.await(5, TimeUnit.SECONDS)
+            MockOpenAIServer.Response(MockOpenAIServer.embeddings(1))
+        }.use { server ->
+            val embeddingModel = OpenAIEmbeddingModel(server.client(), singleFlight = singleFlight)
+            val options = OpenAIEmbeddingOptions.builder().model("text-embedding-3-small").build()
+            val results = runConcurrently(5, { releaseWhenCoalesced(singleFlight, 4, release) }) {
+                embeddingModel.call(EmbeddingRequest(listOf("hello"), options)).result.output.size
+            }
+            assertEquals(List(5) { 3 }, results)
+            assertEquals(1, server.requestCount)
+            assertEquals(4, singleFlight.coalescedCount)
+        }
+    }
+
+    @Test
+    @DisplayName("Only deterministic chat calls share one request")
+    fun testChatModel() {
+        val singleFlight = SingleFlight()
+        val release = CountDownLatch(1)
+        MockOpenAIServer {
+            release.await(5, TimeUnit.SECONDS)
+            MockOpenAIServer.Response(MockOpenAIServer.completion("Hello"))
+        }.use { server ->
+            val chatModel = OpenAIChatModel(server.client(), singleFlight = singleFlight)
+            val deterministic = OpenAiChatOptions.builder().model("gpt-4o-mini").temperature(0.0).build()
+            val results = runConcurrently(5, { releaseWhenCoalesced(singleFlight, 4, release) }) {
+                chatModel.call(Prompt("hello", deterministic)).result.output.text
+            }
+            assertEquals(List(5) { "Hello" }, results)
+            assertEquals(1, server.requestCount)
+
+            val random = OpenAiChatOptions.builder().model("gpt-4o-mini").temperature(1.0).build()
+            runConcurrently(3) {
+                chatModel.call(Prompt("hello", random)).result.output.text
+            }
+            assertEquals(4, server.requestCount)
+            assertEquals(4, singleFlight.coalescedCount)
+        }
+    }
+
+    /**
+     * Releases the mock server once [expected] callers joined the request in flight.
+     */
+    private fun releaseWhenCoalesced(singleFlight: SingleFlight, expected: Long, release: CountDownLatch) {
+        val deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos()
+        while (singleFlight.coalescedCount < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5)
+        }
+        release.countDown()
+    }
+
+    private fun <T> runConcurrently(count: Int, whileRunning: () -> Unit = {}, call: () -> T): List<T> {
+        val executor = Executors.newFixedThreadPool(count)
+        try {
+            val start = CountDownLatch(1)
+            val futures = (1..count).map {
+                executor.submit(Callable {
+                    start.await()
+                    call()
+                })
+            }
+            start.countDown()
+            whileRunning()
+            return futures.map { it.get(10, TimeUnit.SECONDS) }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+}